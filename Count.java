@@ -6,6 +6,11 @@ public class Count {
 		String countyname = args[0];
 		String filename = "Stations/"+countyname+".txt";
 
+		System.out.println("Total stations: " + countStations(filename));
+	}
+
+	/* Function that counts the stations (lines) in the given station file */
+	public static int countStations(String filename) {
 		int count = 0;
 
 		BufferedReader reader = null;
@@ -27,6 +32,6 @@ public class Count {
 			}
 		}
 
-		System.out.println("Total stations: " + count);
+		return count;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+import java.util.*;
+import java.io.*;
+
+/* 	Program that computes the trip statistics for each given county with a single pass over each
+	of its trip files. Every pass fills all of the statistics at once (see TripAggregator):
+	trip and rider totals (FindCountyTrips), trips per origin pixel (PixelInfo), trips in service
+	during each minute (GetTotalDistribution), along with the station count (Count) */
+public class CountyStatistics {
+
+	public static void main(String[] args) {
+
+		// Arguments should be the county abbreviations in all lowercase
+		// Departure files should be in a folder named "Departures" (either <county>.csv or <county>1.csv, <county>2.csv, ...)
+		// Arrival files should be in folder named "Arrivals" (named the same way, with an "A" in front)
+		// Station file should be in folder named "Stations".
+
+		if (args.length == 0) {
+			System.out.println("Must have at least one argument: [county name] ...");
+			return;
+		}
+
+		for (String countyname : args) {
+			TripTotals departures = new TripTotals("departure");
+			TripTotals arrivals = new TripTotals("arrival");
+			PixelTotals pixels = new PixelTotals();
+			ServiceCurve curve = new ServiceCurve();
+
+			// departure files fill every departure statistic in one pass
+			for (String filename : tripFiles("Departures/", countyname))
+				scan(filename, departures, pixels, curve);
+
+			for (String filename : tripFiles("Arrivals/A", countyname))
+				scan(filename, arrivals);
+
+			/* Print Summary */
+			System.out.println(countyname.toUpperCase() + " Statistics\n=============");
+			departures.print();
+			arrivals.print();
+			System.out.println("Max trips in service at once: " + curve.max());
+			System.out.println("Total stations: " + Count.countStations("Stations/" + countyname + ".txt"));
+			System.out.println();
+
+			System.out.println(countyname.toUpperCase() + " Pixel Info\n=============");
+			pixels.print();
+			System.out.println();
+		}
+	}
+
+	/* Reads every trip of the given trip file once, adding each trip to all of the given statistics */
+	public static void scan(String filename, TripAggregator... aggregators) {
+		TripReader reader = null;
+
+		try {
+			reader = TripReader.open(filename); // prep the file (or its binary cache) to be read
+
+			while (reader.next()) {
+				for (TripAggregator aggregator : aggregators)
+					aggregator.add(reader);
+			}
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (reader != null) reader.close();
+		}
+	}
+
+	/*	Function that returns the trip files of the given county: either the single file
+		<prefix><county>.csv or the numbered files <prefix><county>1.csv, <prefix><county>2.csv, ... */
+	public static List<String> tripFiles(String prefix, String countyname) {
+		List<String> files = new ArrayList<String>();
+
+		if (new File(prefix + countyname + ".csv").exists() || new File(prefix + countyname + ".bin").exists()) {
+			files.add(prefix + countyname + ".csv");
+			return files;
+		}
+
+		for (int i = 1; new File(prefix + countyname + i + ".csv").exists() || new File(prefix + countyname + i + ".bin").exists(); i++)
+			files.add(prefix + countyname + i + ".csv");
+
+		return files;
+	}
+}
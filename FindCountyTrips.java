@@ -51,36 +51,13 @@ public class FindCountyTrips {
 
 	/* Function that counts the total number of trips and riders for all the trips in a given file */
 	public static Integer[] getTripInfo(String filename) {
-		BufferedReader reader = null; 
 		Integer[] info = new Integer[2]; /* array to save the total trip (index = 0) and total rider (index = 1) info */
 
-		/* Initialize matrix */
-		for (int i = 0; i < info.length; i++) {
-			info[i] = 0;
-		}
-
-		try {
-			String line;
-			reader = new BufferedReader(new FileReader(filename)); // prep the file to be read
-			line = reader.readLine(); // read the header line
-
-			while ((line = reader.readLine()) != null) {
-				/* get trip info */
-				info[0]++;
+		TripTotals totals = new TripTotals("");
+		CountyStatistics.scan(filename, totals);
 
-				/* get rider info */
-				info[1] += Integer.parseInt(line.split(",")[17]);
-			}
-		}
-
-		catch(Exception e) {
-			e.printStackTrace();
-		}
-		finally {
-			if (reader != null){
-				try {reader.close();} catch (Exception e) {}
-			}
-		}
+		info[0] = totals.trips();
+		info[1] = totals.riders();
 
 		return info;
 
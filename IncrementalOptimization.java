@@ -0,0 +1,196 @@
+import java.util.*;
+
+/* 	Program that adds new trip files to a county that was already optimized with "Optimization ... -save".
+	The saved stations and taxis are loaded, the new taxis are added, and only the stations that change
+	are reoptimized, only for the departures around the times of the new trips. The other stations keep
+	the result they had when the state was saved. */
+public class IncrementalOptimization {
+	private static final double MARGIN = 600; // seconds around the new trips that are reoptimized
+
+	public static void main(String[] args) {
+
+		// Arguments should be county abbreviation in all lowercase, followed by the new departure and arrival files
+		// The saved state should be in folder named "Stations" (e.g. Stations/nor.state)
+
+		if (args.length < 2) {
+			System.out.println("Must have at least two arguments: [county name] [new trip file] ...");
+			return;
+		}
+
+		String countyname = args[0];
+		String filename = "Stations/" + countyname + ".state";
+
+		System.out.println("\nCounty being updated: " + countyname.toUpperCase());
+
+		long startTime = System.currentTimeMillis(); // start keeping track of run time
+
+		// Get the saved stations and taxis for given county
+		System.out.println("Getting Saved State\n=============");
+		StationState state = null;
+		try {
+			state = StationState.load(filename);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+			return;
+		}
+		Optimization.stations = new ArrayList<Station>(state.stations());
+		for (Station station : Optimization.stations)
+			station.modified = false;
+
+		// the saved stations have their own registry, so they get their own lookup table. It is only kept in memory,
+		// since the saved stations are not in the order of the station file
+		if (!Optimization.stations.isEmpty())
+			Optimization.stations.get(0).registry.setLookup(StationLookup.build(Optimization.stations));
+		System.out.println("Stations loaded: " + Optimization.stations.size());
+		System.out.println();
+
+
+		// Add the new trips, keeping track of when they happen
+		System.out.println("Getting New Trip Info\n=============");
+		List<Trip> trips = new ArrayList<Trip>();
+		double from = Double.POSITIVE_INFINITY;
+		double to = Double.NEGATIVE_INFINITY;
+
+		for (int i = 1; i < args.length; i++) {
+			List<Taxi> taxis = Optimization.readTaxis(args[i], countyname);
+			for (Taxi taxi : taxis) {
+				from = Math.min(from, taxi.dTime());
+				to = Math.max(to, taxi.timeAvailable());
+			}
+			trips = Optimization.addTaxis(taxis, trips);
+			System.out.println(args[i] + ": " + taxis.size() + " trips");
+		}
+		System.out.println();
+
+		if (trips.isEmpty()) {
+			System.out.println("No new trips to add");
+			return;
+		}
+
+		from -= MARGIN;
+		to += MARGIN;
+
+
+		/* Initialize the new departures at the stations that received them */
+		List<Station> affected = modifiedStations();
+		int previousTotal = totalDepartures(affected);
+		int difference = 0;
+		int round = 1;
+
+		do {
+			System.out.println("Initializing Departures: Round " + round + "\n=========================");
+			affected = modifiedStations();
+			for (int i = 0; i < affected.size(); i++) {
+				Optimization.stations = affected.get(i).initializeDepartures(Optimization.stations, from, to);
+				System.out.println("Station " + (i+1) + " complete");
+			}
+
+			int totalDepartureTaxis = totalDepartures(modifiedStations());
+			difference = previousTotal - totalDepartureTaxis;
+			System.out.println(difference);
+			previousTotal = totalDepartureTaxis;
+			round++;
+			System.out.println();
+
+		} while (difference > 0);
+
+
+		/* Deal with the new intercounty trips */
+		System.out.println("Optimizing Intercounty Departures\n=========================");
+		affected = modifiedStations();
+		for (int i = 0; i < affected.size(); i++) {
+			Optimization.stations = affected.get(i).intercountyOptimization(Optimization.stations, from, to);
+			System.out.println("Station " + (i+1) + " complete");
+		}
+		System.out.println();
+
+
+		/* Minimize the empty mile burden of the new departures */
+		previousTotal = totalDepartures(modifiedStations());
+		round = 1;
+
+		do {
+			System.out.println("EmptyMileBurden Optimization: Round " + round + "\n=========================");
+			affected = modifiedStations();
+			for (int i = 0; i < affected.size(); i++) {
+				Optimization.stations = affected.get(i).optimizeEmptyMiles(Optimization.stations, from, to);
+				System.out.println("Station " + (i+1) + " complete");
+			}
+
+			int totalDepartureTaxis = totalDepartures(modifiedStations());
+			difference = previousTotal - totalDepartureTaxis;
+			System.out.println(difference);
+			previousTotal = totalDepartureTaxis;
+			round++;
+			System.out.println();
+
+		} while (difference > 0);
+
+
+		// the new state is taken before cycling, like in Optimization
+		affected = modifiedStations();
+		state.snapshot();
+
+
+		/* Cycle the departures of the stations that changed */
+		System.out.println("Cycling Departures\n=========================");
+		for (Station station : affected)
+			station.cycleDepartures();
+		System.out.println();
+
+		try {
+			state.save(filename, affected);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+
+		long endTime = System.currentTimeMillis(); // get end time
+
+
+		/* Print Summary, using the saved results of the stations that did not change */
+		int totalDepartureTaxis = 0;
+		int currentDepartureNodes = 0;
+		int currentArrivalNodes = 0;
+		double totalEmptyMiles = 0;
+		for (int i = 0; i < state.stations().size(); i++) {
+			totalDepartureTaxis += state.cycledDepartures(i);
+			currentDepartureNodes += state.cycledDepartureNodes(i);
+			currentArrivalNodes += state.cycledArrivalNodes(i);
+			totalEmptyMiles += state.cycledEmptyMiles(i);
+		}
+
+		System.out.println(countyname.toUpperCase() + " Incremental Update\n=============");
+		System.out.println("Total stations: " + state.stations().size());
+		System.out.println("Stations reoptimized: " + affected.size());
+		System.out.println("New trips added: " + trips.size());
+		System.out.println("Times reoptimized (seconds): " + from + " - " + to);
+		System.out.println("Current total number of taxis: " + totalDepartureTaxis);
+		System.out.println("Current number of departure nodes: " + currentDepartureNodes);
+		System.out.println("Current number of arrival nodes: " + currentArrivalNodes);
+		System.out.println("Current number of total nodes: " + (currentDepartureNodes+currentArrivalNodes));
+		System.out.println("Current total number of empty taxi miles: " + totalEmptyMiles);
+		System.out.println("Total run time (seconds): " + (endTime - startTime)/1000);
+		System.out.println();
+	}
+
+	/* 	Function that returns the stations whose taxis have changed since the state was loaded,
+		sorted by number of departures like in Optimization */
+	private static List<Station> modifiedStations() {
+		List<Station> modified = new ArrayList<Station>();
+		for (Station station : Optimization.stations)
+			if (station.modified) modified.add(station);
+
+		Collections.sort(modified, Collections.reverseOrder(new Optimization.StationComparator()));
+		return modified;
+	}
+
+	/* Function that returns the total number of departures of the given stations */
+	private static int totalDepartures(List<Station> stations) {
+		int total = 0;
+		for (Station station : stations)
+			total += station.totalDepartures();
+		return total;
+	}
+}
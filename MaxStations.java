@@ -1,28 +1,73 @@
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.*;
 
-/* 	Program that finds the max number of stations that a county would need based on 
-	the summary of information for the pixels in the county given the generated trip 
+/* 	Program that finds the max number of stations that a county would need based on
+	the summary of information for the pixels in the county given the generated trip
 	files */
 public class MaxStations {
-	private static List<Station> stations;
+	private static final double MAX_TIME = 300; // stations must be more than 5 minutes apart
+	private static final int CELL = (int) Math.ceil(MAX_TIME * 30 / 3600 * 2 / 1.2); // pixels a taxi drives in 5 minutes
 
 	public static void main(String[] args) {
-		
-		// Argument should be the pixel info summary file for the county
 
-		int N = args.length;
-		stations = new ArrayList<Station>(); // initialize the list of stations
+		// Argument should be the pixel info summary file for the county, or several of them, or "-all" for
+		// every file in the folder "PixelInfo". With one file, the stations are printed.
+		// With several, the files are run at the same time, and the stations for each county are
+		// saved to "Stations/<county>.txt" (named after the pixel info file)
 
-		getStations(args[0]);
+		if (args.length == 0) {
+			System.out.println("Must have at least one argument: [pixel info file] ... | -all");
+			return;
+		}
+
+		List<String> files = new ArrayList<String>();
+		for (String arg : args) {
+			if (arg.equals("-all")) {
+				String[] names = new File("PixelInfo").list();
+				if (names == null) continue;
+				Arrays.sort(names);
+				for (String name : names)
+					if (name.endsWith(".txt")) files.add("PixelInfo/" + name);
+			}
+			else files.add(arg);
+		}
+
+		if (files.size() == 1 && !args[0].equals("-all")) {
+			List<Station> stations = getStations(files.get(0));
 
-		// System.out.println(stations.size());
-		for (Station s : stations) {
-			System.out.println(s);
+			// System.out.println(stations.size());
+			for (Station s : stations) {
+				System.out.println(s);
+			}
+			return;
+		}
+
+		// find the stations of every county at the same time
+		List<StationFileTask> tasks = new ArrayList<StationFileTask>();
+		for (String filename : files) {
+			StationFileTask task = new StationFileTask(filename);
+			ForkJoinPool.commonPool().execute(task);
+			tasks.add(task);
+		}
+
+		for (int i = 0; i < files.size(); i++) {
+			String county = new File(files.get(i)).getName();
+			String filename = "Stations/" + county;
+			List<Station> stations = tasks.get(i).join();
+
+			saveStations(filename, stations);
+			System.out.println(files.get(i) + " -> " + filename + " (" + stations.size() + " stations)");
 		}
 	}
 
-	public static void getStations(String filename) {
+	/* 	Function that reads the pixel info file for a county, and returns the pixels that are more than 5 minutes
+		away from every pixel before them, in the order of the file. Accepted stations are saved in a spatial hash
+		with cells as wide as a 5 minute drive, so each pixel is only checked against the stations in its own
+		and the 8 cells around it */
+	public static List<Station> getStations(String filename) {
+		List<Station> stations = new ArrayList<Station>();
+		Map<Long, List<Station>> cells = new HashMap<Long, List<Station>>(); // stations in each cell of the hash
 		BufferedReader reader = null;
 
 		try {
@@ -32,23 +77,41 @@ public class MaxStations {
 
 			while ((line = reader.readLine()) != null) {
 				String[] pixelInfo = line.split("\t");
-				
+
 				// create station
 				Station station = new Station(pixelInfo[1]);
+				int x = cell(station.cx);
+				int y = cell(station.cy);
 
 				// check if this station is within 5 minutes of any other stations
 				boolean withinRange = false;
-				for (Station s : stations) {
-					double timeTo = station.distanceTo(s) * 3600 / 30;
+				for (int i = x - 1; i <= x + 1 && !withinRange; i++) {
+					for (int j = y - 1; j <= y + 1 && !withinRange; j++) {
+						List<Station> cell = cells.get(key(i, j));
+						if (cell == null) continue;
+
+						for (Station s : cell) {
+							double timeTo = station.travelTimeTo(s);
 
-					if (timeTo <= 300) {
-						withinRange = true;
-						break;
+							if (timeTo <= MAX_TIME) {
+								withinRange = true;
+								break;
+							}
+						}
 					}
 				}
 
 				// if not within range of any other station, save the new station
-				if (!withinRange) stations.add(station);
+				if (!withinRange) {
+					stations.add(station);
+
+					List<Station> cell = cells.get(key(x, y));
+					if (cell == null) {
+						cell = new ArrayList<Station>();
+						cells.put(key(x, y), cell);
+					}
+					cell.add(station);
+				}
 			}
 		}
 		catch(Exception e) {
@@ -59,5 +122,47 @@ public class MaxStations {
 				try {reader.close();} catch (Exception e) {}
 			}
 		}
+
+		return stations;
+	}
+
+	/* Function that saves the stations in the format of the station files */
+	public static void saveStations(String filename, List<Station> stations) {
+		PrintWriter writer = null;
+
+		try {
+			writer = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+			for (Station s : stations)
+				writer.println(s);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (writer != null) writer.close();
+		}
+	}
+
+	/* Returns the cell of the spatial hash that a coordinate is in */
+	private static int cell(double coordinate) {
+		return (int) Math.floor(coordinate / CELL);
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/* Task that finds the stations for one pixel info file */
+	static class StationFileTask extends RecursiveTask<List<Station>> {
+		private static final long serialVersionUID = 1L;
+		private String filename;
+
+		StationFileTask(String filename) {
+			this.filename = filename;
+		}
+
+		protected List<Station> compute() {
+			return getStations(filename);
+		}
 	}
-}
\ No newline at end of file
+}
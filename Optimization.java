@@ -1,10 +1,13 @@
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.*;
 
 /* 	Program that runs the optimization for a county using the created stations and all the trip files.
 	Must be run after the stations algorithm, in order to work properly. */
 public class Optimization {
 	static List<Station> stations; // list of stations for given county
+	static StationRegistry registry; // stations for given county, by id
+	static boolean hilbert = false; // whether station ids are given along a Hilbert curve
 
 	public static void main(String[] args) {
 
@@ -13,14 +16,34 @@ public class Optimization {
 		// Departure files should be in a folder named "Departures". 
 		// Arrival files should be in folder named "Arrivals".
 		// Station file should be in folder named "Stations".
-
-		if (args.length != 2) {
-			System.out.println("Must have two arguments: [file name] [number of departure files]");
+		// Optional "-parallel" reads all the departure and arrival files at once
+		// Optional "-save" saves the optimized stations to "Stations/<county>.state", so new trips
+		// can later be added with IncrementalOptimization
+		// Optional "-hilbert" numbers the stations along a Hilbert curve, so stations that are close together
+		// are next to each other in the distance matrix
+
+		if (args.length < 2) {
+			System.out.println("Must have two arguments: [file name] [number of departure files] [-parallel] [-save] [-hilbert]");
 			return;
 		}
 
 		String countyname = args[0];
 		int numFiles = Integer.parseInt(args[1]);
+		boolean parallel = false;
+		boolean save = false;
+
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-parallel")) parallel = true;
+			else if (args[i].equals("-save")) save = true;
+			else if (args[i].equals("-hilbert")) hilbert = true;
+			else {
+				System.out.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		List<String> departureFiles = tripFiles("Departures/", countyname, numFiles);
+		List<String> arrivalFiles = tripFiles("Arrivals/A", countyname, numFiles);
 		List<Trip> departures = new ArrayList<Trip>();
 		List<Trip> arrivals = new ArrayList<Trip>();
 		
@@ -37,27 +60,26 @@ public class Optimization {
 		System.out.println();
 
 
+		// In parallel mode, read all the departure and arrival files at once.
+		// The taxis from each file are only added to the stations below, in file order
+		List<List<Taxi>> departureTaxis = null;
+		List<List<Taxi>> arrivalTaxis = null;
+		if (parallel) {
+			departureTaxis = readTaxisParallel(departureFiles, arrivalFiles, countyname);
+			arrivalTaxis = departureTaxis.subList(departureFiles.size(), departureTaxis.size());
+		}
+
 		// Save relevant departures from county
 		System.out.println("Getting Departure Info\n=============");
-		if (numFiles == 1) { // if there is only one departure file
-			filename = "Departures/" + countyname + ".csv";
-			departures = getTrips(filename, countyname, departures);
-		}
-		else { // otherwise
-			for (int i = 1; i <= numFiles; i++) {
-				filename = "Departures/" + countyname + i + ".csv";
-				departures = getTrips(filename, countyname, departures);
-			}
+		for (int i = 0; i < departureFiles.size(); i++) {
+			if (parallel) departures = addTaxis(departureTaxis.get(i), departures);
+			else departures = getTrips(departureFiles.get(i), countyname, departures);
 		}
 		System.out.println();
 
-		int totalDepartures1 = 0;
-		int totalArrivals1 = 0;	
-
-		for (Station station : stations) {
-			totalDepartures1 += station.totalDepartures();
-			totalArrivals1 += station.totalArrivals();
-		}
+		// the county's ledger has the totals of all of its stations
+		int totalDepartures1 = registry.ledger().departures();
+		int totalArrivals1 = registry.ledger().arrivals();
 
 		System.out.println("Departures accounted for: " + totalDepartures1);
 		System.out.println("Arrivals accounted for: " + totalArrivals1);
@@ -71,36 +93,21 @@ public class Optimization {
 
 		// Save relevant arrivals from county
 		System.out.println("Getting Arrival Info\n=============");
-		if (numFiles == 1) { // if there is only one departure file
-			filename = "Arrivals/A" + countyname + ".csv";
-			arrivals = getTrips(filename, countyname, arrivals);
-		}
-		else { // otherwise
-			for (int i = 1; i <= numFiles; i++) {
-				filename = "Arrivals/A" + countyname + i + ".csv";
-				arrivals = getTrips(filename, countyname, arrivals);
-			}
+		for (int i = 0; i < arrivalFiles.size(); i++) {
+			if (parallel) arrivals = addTaxis(arrivalTaxis.get(i), arrivals);
+			else arrivals = getTrips(arrivalFiles.get(i), countyname, arrivals);
 		}
 		System.out.println();
 
-		int totalDepartures2 = 0;
-		int totalArrivals2 = 0;	
-
-		for (Station station : stations) {
-			totalDepartures2 += station.totalDepartures();
-			totalArrivals2 += station.totalArrivals();
-		}
+		int totalDepartures2 = registry.ledger().departures();
+		int totalArrivals2 = registry.ledger().arrivals();
 
 		System.out.println("Departures accounted for: " + totalDepartures2);
 		System.out.println("Arrivals accounted for: " + totalArrivals2);
 		System.out.println();
 
-		int initialDepartureNodes = 0;
-		int initialArrivalNodes = 0;
-		for (Station station : stations) {
-			initialDepartureNodes += station.totalDepartureNodes();
-			initialArrivalNodes += station.totalArrivalNodes();
-		}
+		int initialDepartureNodes = registry.ledger().departureNodes();
+		int initialArrivalNodes = registry.ledger().arrivalNodes();
 
 
 		/* Print Summary */
@@ -127,8 +134,8 @@ public class Optimization {
 		int round = 1;
 
 		Collections.sort(stations, Collections.reverseOrder(new StationComparator())); // sort stations by number of departures
-		Object[] stationsCopy = stations.toArray(); // create shallow copy of stations
-		int N = stationsCopy.length;
+		int[] order = StationRegistry.ids(stations); // ids of the stations, in sorted order
+		int N = order.length;
 		int totalDepartureTaxis = 0;
 		int currentDepartureNodes = 0;
 		int currentArrivalNodes = 0;
@@ -140,7 +147,7 @@ public class Optimization {
 			currentArrivalNodes = 0;
 
 			for (int i = 0; i < N; i++) {
-				Station current = stations.get(stations.indexOf((Station)stationsCopy[i]));
+				Station current = registry.get(order[i]);
 				stations = current.initializeDepartures(stations);
 				System.out.println("Station " + (i+1) + " complete");
 				totalDepartureTaxis += current.totalDepartures();
@@ -182,14 +189,14 @@ public class Optimization {
 			NOTE: still dealing with infinite fleet at this point */
 		System.out.println("Optimizing Intercounty Departures\n=========================");
 		Collections.sort(stations, Collections.reverseOrder(new StationComparator())); // sort stations by number of departures
-		stationsCopy = stations.toArray();
+		order = StationRegistry.ids(stations);
 		totalDepartureTaxis = 0;
 		currentDepartureNodes = 0;
 		currentArrivalNodes = 0;
 		double totalEmptyMiles = 0;
 
 		for (int i = 0; i < N; i++) {
-			Station current = stations.get(stations.indexOf((Station)stationsCopy[i]));
+			Station current = registry.get(order[i]);
 			stations = current.intercountyOptimization(stations);
 			System.out.println("Station " + (i+1) + " complete");
 			totalDepartureTaxis += current.totalDepartures();
@@ -223,7 +230,7 @@ public class Optimization {
 
 		/* Continually loop through departures and arrivals to minimize empty mile burden  */
 		Collections.sort(stations, Collections.reverseOrder(new StationComparator())); // sort stations by number of departures
-		stationsCopy = stations.toArray();
+		order = StationRegistry.ids(stations);
 		
 		previousTotal = totalDepartureTaxis;
 		difference = 0;
@@ -237,7 +244,7 @@ public class Optimization {
 			totalEmptyMiles = 0;
 			
 			for (int i = 0; i < N; i++) {
-				Station current = stations.get(stations.indexOf((Station)stationsCopy[i]));
+				Station current = registry.get(order[i]);
 				stations = current.optimizeEmptyMiles(stations);
 				System.out.println("Station " + (i+1) + " complete");
 				totalDepartureTaxis += current.totalDepartures();
@@ -323,6 +330,10 @@ public class Optimization {
 
 		previousTotalNodes = currentDepartureNodes + currentArrivalNodes;
 
+		// the saved state is taken before cycling, so that new trips can still be combined with the taxis
+		StationState state = null;
+		if (save) state = new StationState(stations);
+
 
 
 
@@ -376,6 +387,15 @@ public class Optimization {
 		System.out.println("Total run time (seconds): " + (endTime - startTime)/1000);
 		System.out.println();
 
+		if (save) {
+			try {
+				state.save("Stations/" + countyname + ".state", stations);
+			}
+			catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+
 
 
 		// // Optimization round based on arrivals and departures
@@ -491,99 +511,222 @@ public class Optimization {
 			}
 		}
 
+		// give every station an id, and get the closest station to every pixel and the distance between
+		// every pair of stations ahead of time
+		registry = StationRegistry.register(stations, hilbert);
+		registry.setLookup(StationLookup.forStations(filename, stations));
+		StationDistances.build(registry);
+
 		return stations;
 	}
 
 
 
+	/*	Function that returns the names of the trip files for the given county.
+		If there is more than one file, files are numbered starting at 1 */
+	public static List<String> tripFiles(String prefix, String countyname, int numFiles) {
+		List<String> files = new ArrayList<String>();
+
+		if (numFiles == 1) files.add(prefix + countyname + ".csv"); // if there is only one file
+		else { // otherwise
+			for (int i = 1; i <= numFiles; i++)
+				files.add(prefix + countyname + i + ".csv");
+		}
+
+		return files;
+	}
+
 	/* 	Function that reads the trip file(s) for the given county, and saves the relevant trip info from 
 		each line into a trip data structure. Then, returns a list of all the trips that were created. */
 	public static List<Trip> getTrips(String filename, String countyname, List<Trip> list) {
-		BufferedReader reader = null;
+		return addTaxis(readTaxis(filename, countyname), list);
+	}
+
+	/*	Function that reads a trip file, and creates a taxi for each relevant trip in it.
+		The origin and current stations of each taxi are found, but the taxis are not yet added to
+		the stations, so several files can be read at the same time */
+	public static List<Taxi> readTaxis(String filename, String countyname) {
+		List<Taxi> taxis = new ArrayList<Taxi>();
+		TripReader parser = null;
 
 		try {
-			String line;
-			reader = new BufferedReader(new FileReader(filename)); // prep the file to be read
-			line = reader.readLine(); // read the header line
-
-			// go through every line in the file
-			while ((line = reader.readLine()) != null) {
-				
-				/* only save trips with <= 5 riders */
-				int riders = Integer.parseInt(line.split(",")[17]);
-				if (riders <= 6) {
-					Trip trip = new Trip(line); // create a trip with the info
-					list.add(trip); // save trip
-					
-					Taxi taxi = new Taxi(trip, countyname.toUpperCase(), stations); // create a taxi to accomodate the trip
-					Station oStation = null; // taxi's origin station that will be found below
-					Station cStation = null; // taxi's current station (post-trip) that will also be found below
-
-					/* if dPixel is in the county */
-					if (trip.dCounty().equals(countyname.toUpperCase())) {
-						// find station closest to the dPixel
-						oStation = trip.findClosestOriginStation(stations);
-
-						// save as base station for taxi
-						taxi.setBase(oStation);
-					}
-
-					/* if aPixel is in the county */
-					if (trip.aCounty().equals(countyname.toUpperCase())) {
-						// find station closest to the aPixel
-						cStation = trip.findClosestCurrentStation(stations);
-
-						// save as current station for taxi
-						taxi.setCurrent(cStation);
-					}
-
-					/* 	after updating taxi, add it to the lists maintained by
-						current and origin stations
-						NOTE: these stations will be null, if the trip / taxi
-						is intercounty */
-
-					// add taxi to the oStation's departure list
-					if (oStation != null) {
-						if (!oStation.addDeparture(taxi)) {
-							// System.out.println(taxi.currentTrip().currentPixel() + ",\tdTime: " + taxi.dTime() + "\tNodes: "+taxi.numTrips()+"\taTime: "+taxi.timeAvailable());
-						}
-					}
-
-					// add taxi to the closest station's departure list
-					if (cStation != null) cStation.addArrival(taxi);
-				}
+			parser = TripReader.open(filename); // prep the file (or its binary cache) to be read
+			readTaxis(parser, countyname, taxis);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (parser != null) parser.close();
+		}
 
-			}
+		return taxis;
+	}
+
+	/*	Function that reads the lines of a trip file that start between the given byte offsets
+		(see TripParser.split), and creates a taxi for each relevant trip in them */
+	public static List<Taxi> readTaxis(String filename, String countyname, long start, long end) {
+		List<Taxi> taxis = new ArrayList<Taxi>();
+		TripReader parser = null;
+
+		try {
+			parser = new TripParser(filename, start, end); // prep the part of the file to be read
+			readTaxis(parser, countyname, taxis);
 		}
 		catch(Exception e) {
 			e.printStackTrace();
 		}
 		finally {
-			if (reader != null){
-				try {reader.close();} catch (Exception e) {}
+			if (parser != null) parser.close();
+		}
+
+		return taxis;
+	}
+
+	/*	Function that creates a taxi for each relevant trip left in the given reader, and saves them in the given list */
+	private static void readTaxis(TripReader parser, String countyname, List<Taxi> taxis) throws IOException {
+		String county = countyname.toUpperCase();
+
+		// go through every line in the file
+		while (parser.next()) {
+			
+			/* only save trips with <= 5 riders */
+			int riders = parser.totalRiders();
+			if (riders <= 6) {
+				Trip trip = parser.trip(); // create a trip with the info
+				taxis.add(createTaxi(trip, county)); // save taxi
 			}
+
+		}
+	}
+
+	/*	Function that creates a taxi to accomodate the given trip, and finds its origin and current stations.
+		County should be in all uppercase */
+	public static Taxi createTaxi(Trip trip, String county) {
+		Taxi taxi = new Taxi(trip, county, stations); // create a taxi to accomodate the trip
+
+		/* if dPixel is in the county */
+		if (trip.dCounty().equals(county)) {
+			// find station closest to the dPixel, and save as base station for taxi
+			taxi.setBase(trip.findClosestOriginStation(stations));
+		}
+
+		/* if aPixel is in the county */
+		if (trip.aCounty().equals(county)) {
+			// find station closest to the aPixel, and save as current station for taxi
+			taxi.setCurrent(trip.findClosestCurrentStation(stations));
+		}
+
+		return taxi;
+	}
+
+	/*	Function that adds the taxis read from a trip file to the lists maintained by their
+		current and origin stations, and saves their trips in the given list */
+	public static List<Trip> addTaxis(List<Taxi> taxis, List<Trip> list) {
+		for (Taxi taxi : taxis) {
+			list.add(taxi.firstTrip()); // save trip
+
+			/* 	NOTE: these stations will be null, if the trip / taxi
+				is intercounty */
+			Station oStation = taxi.oStation(); // taxi's origin station
+			Station cStation = taxi.cStation(); // taxi's current station (post-trip)
+
+			// add taxi to the oStation's departure list
+			if (oStation != null) oStation.addDeparture(taxi);
+
+			// add taxi to the closest station's departure list
+			if (cStation != null) cStation.addArrival(taxi);
 		}
 
 		return list;
 	}
 
+	/*	Function that reads all the given departure and arrival files at the same time on a fork-join pool.
+		Large files are also split into parts that are read at the same time (see TripFileTask).
+		Returns the taxis of each file, in the order the files were given (departures, then arrivals) */
+	public static List<List<Taxi>> readTaxisParallel(List<String> departureFiles, List<String> arrivalFiles, String countyname) {
+		List<TripFileTask> tasks = new ArrayList<TripFileTask>();
+		for (String filename : departureFiles)
+			tasks.add(new TripFileTask(filename, countyname));
+		for (String filename : arrivalFiles)
+			tasks.add(new TripFileTask(filename, countyname));
+
+		for (TripFileTask task : tasks)
+			ForkJoinPool.commonPool().execute(task);
+
+		List<List<Taxi>> taxis = new ArrayList<List<Taxi>>();
+		for (TripFileTask task : tasks)
+			taxis.add(task.join());
+
+		return taxis;
+	}
+
 	/*	Function that finds the closest station in the list of stations to the given pixel */
-	public static Station findClosest(String pixel) {
-		Station closest = null;
-		double minDist = Double.POSITIVE_INFINITY;
-		// go through each of the available stations
-		for (Station station : stations) {
-			// find the distance between this pixel and the station
-			double dist = station.distanceTo(pixel);
-			
-			// if distance is the closest dist thus far, save station
-			if (dist < minDist) {
-				minDist = dist;
-				closest = station;
+	public static Station findClosest(int pixel) {
+		return StationIndex.of(stations).nearest(pixel);
+	}
+
+	/* 	Task that reads the taxis from one trip file. A large text file is split into line-aligned byte ranges,
+		which are read by subtasks at the same time, and their taxis are put back together in file order */
+	static class TripFileTask extends RecursiveTask<List<Taxi>> {
+		private static final long serialVersionUID = 1L;
+		static long chunkSize = 8 << 20; // bytes of a text file read by each subtask
+
+		private String filename;
+		private String countyname;
+
+		TripFileTask(String filename, String countyname) {
+			this.filename = filename;
+			this.countyname = countyname;
+		}
+
+		protected List<Taxi> compute() {
+			File file = new File(filename);
+			File cache = new File(TripCache.cacheName(filename));
+			boolean cached = cache.exists() && cache.lastModified() >= file.lastModified();
+
+			// binary caches and small files are read all at once
+			int chunks = (int) Math.min(file.length() / chunkSize, 4 * ForkJoinPool.getCommonPoolParallelism());
+			if (cached || chunks < 2) return readTaxis(filename, countyname);
+
+			List<TripChunkTask> tasks = new ArrayList<TripChunkTask>();
+			try {
+				long[] offsets = TripParser.split(filename, chunks);
+				for (int i = 0; i < chunks; i++)
+					tasks.add(new TripChunkTask(filename, countyname, offsets[i], offsets[i+1]));
+			}
+			catch(Exception e) {
+				e.printStackTrace();
+				return readTaxis(filename, countyname);
 			}
+			invokeAll(tasks);
+
+			List<Taxi> taxis = new ArrayList<Taxi>();
+			for (TripChunkTask task : tasks)
+				taxis.addAll(task.join());
+
+			return taxis;
 		}
+	}
 
-		return closest;
+	/* Task that reads the taxis from one byte range of a trip file */
+	static class TripChunkTask extends RecursiveTask<List<Taxi>> {
+		private static final long serialVersionUID = 1L;
+		private String filename;
+		private String countyname;
+		private long start;
+		private long end;
+
+		TripChunkTask(String filename, String countyname, long start, long end) {
+			this.filename = filename;
+			this.countyname = countyname;
+			this.start = start;
+			this.end = end;
+		}
+
+		protected List<Taxi> compute() {
+			return readTaxis(filename, countyname, start, end);
+		}
 	}
 
 	/* Comparator used to sort Stations by the number of departures they have */
@@ -0,0 +1,79 @@
+/* Pixel helper
+   Pixels are packed into a single int, with the grid xPixel in the upper 16 bits and the
+   yPixel in the lower 16 bits. The "x, y" string form is only created for output
+*/
+
+public class Pixel {
+	private static final int MAX = 0xFFFF; // largest coordinate that can be packed
+
+	/* Pack the given grid coordinates into a pixel */
+	public static int pack(int x, int y) {
+		if (x < 0 || x > MAX || y < 0 || y > MAX)
+			throw new IllegalArgumentException("Pixel out of range: " + x + ", " + y);
+		return (x << 16) | y;
+	}
+
+	/* Pack the given coordinates into a pixel. Coordinates must be whole numbers */
+	public static int pack(double x, double y) {
+		if (x != Math.rint(x) || y != Math.rint(y))
+			throw new IllegalArgumentException("Pixel is not on the grid: " + x + ", " + y);
+		return pack((int) x, (int) y);
+	}
+
+	/* Pack a pixel given as "x, y" */
+	public static int parse(String pixel) {
+		String[] coordinates = pixel.split(", ");
+		return pack(Double.parseDouble(coordinates[0]), Double.parseDouble(coordinates[1]));
+	}
+
+	public static int x(int pixel) {
+		return pixel >>> 16;
+	}
+
+	public static int y(int pixel) {
+		return pixel & MAX;
+	}
+
+	/* Returns the distance between two pixels in miles (see PixelDistances) */
+	public static double distance(int a, int b) {
+		return PixelDistances.miles(x(a) - x(b), y(a) - y(b));
+	}
+
+	/* Returns the time to drive between two pixels in seconds */
+	public static double travelTime(int a, int b) {
+		return PixelDistances.seconds(x(a) - x(b), y(a) - y(b));
+	}
+
+	/* 	Returns the position of a pixel along a Hilbert curve that fills the whole grid. Pixels that are close
+		along the curve are close on the grid, so sorting by it keeps nearby pixels next to each other */
+	public static long hilbert(int pixel) {
+		int n = MAX + 1; // side of the grid
+		int x = x(pixel);
+		int y = y(pixel);
+		long d = 0;
+
+		for (int s = n / 2; s > 0; s /= 2) {
+			int rx = ((x & s) > 0) ? 1 : 0;
+			int ry = ((y & s) > 0) ? 1 : 0;
+			d += (long) s * s * ((3 * rx) ^ ry);
+
+			// rotate the quadrant, so the curve inside it starts and ends next to the quadrants around it
+			if (ry == 0) {
+				if (rx == 1) {
+					x = n - 1 - x;
+					y = n - 1 - y;
+				}
+				int swap = x;
+				x = y;
+				y = swap;
+			}
+		}
+
+		return d;
+	}
+
+	/* Returns the pixel in the same "x, y" form used in the trip and station files */
+	public static String toString(int pixel) {
+		return ((double) x(pixel)) + ", " + ((double) y(pixel));
+	}
+}
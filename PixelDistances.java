@@ -0,0 +1,72 @@
+/* Pixel distance table
+   Every distance in the model is 1.2 * the cartesian distance between two points of the pixel grid,
+   so it only depends on how many pixels apart they are along x and y. The distance (in miles) and the
+   time to drive it (in seconds) are worked out once for every pair of offsets, and read afterwards.
+   The distance is the same both ways, so only offsets with dx >= dy are saved (about 1 MB for both tables).
+   Offsets outside of the table, or that are not whole pixels, are worked out with the same formula
+*/
+
+public class PixelDistances {
+	public static final int SIDE = 352; // largest offset in the table + 1 (NJ pixels run to ~340)
+
+	private static final double[] miles = new double[SIDE * (SIDE + 1) / 2]; // distance for offsets (dx, dy), at dx * (dx + 1) / 2 + dy
+	private static final double[] seconds = new double[SIDE * (SIDE + 1) / 2]; // time to drive the distance at 30 mph
+
+	static {
+		for (int dx = 0; dx < SIDE; dx++) {
+			for (int dy = 0; dy <= dx; dy++) {
+				double dist = distance(dx, dy);
+				miles[dx * (dx + 1) / 2 + dy] = dist;
+				seconds[dx * (dx + 1) / 2 + dy] = dist * 3600 / 30;
+			}
+		}
+	}
+
+	/* Returns the distance between pixels dx and dy apart, in miles */
+	public static double miles(int dx, int dy) {
+		int i = index(dx, dy);
+		return (i < 0) ? distance(dx, dy) : miles[i];
+	}
+
+	/* Returns the time to drive between pixels dx and dy apart, in seconds */
+	public static double seconds(int dx, int dy) {
+		int i = index(dx, dy);
+		return (i < 0) ? distance(dx, dy) * 3600 / 30 : seconds[i];
+	}
+
+	/* Returns the distance between points dx and dy apart, in miles */
+	public static double miles(double dx, double dy) {
+		int x = (int) dx;
+		int y = (int) dy;
+		if (x == dx && y == dy) return miles(x, y);
+
+		return (1.2 * Math.sqrt(dx*dx + dy*dy)/2);
+	}
+
+	/* Returns the time to drive between points dx and dy apart, in seconds */
+	public static double seconds(double dx, double dy) {
+		int x = (int) dx;
+		int y = (int) dy;
+		if (x == dx && y == dy) return seconds(x, y);
+
+		return (1.2 * Math.sqrt(dx*dx + dy*dy)/2) * 3600 / 30;
+	}
+
+	/* Returns the position of the given offsets in the tables, or -1 if they are not in them */
+	private static int index(int dx, int dy) {
+		dx = Math.abs(dx);
+		dy = Math.abs(dy);
+		if (dx < dy) {
+			int swap = dx;
+			dx = dy;
+			dy = swap;
+		}
+		return (dx < SIDE) ? dx * (dx + 1) / 2 + dy : -1;
+	}
+
+	private static double distance(int dx, int dy) {
+		// 1.2 * the cartesian distance between the two pixels
+		// NOTE: there is a scalar of one half because each pixel is 1/4 square miles
+		return (1.2 * Math.sqrt(dx*dx + dy*dy)/2);
+	}
+}
@@ -1,99 +1,253 @@
 import java.util.*;
 import java.io.*;
 
-/* Program to get all the land-use statistics for the top 3 stations in the given county */
-public class PixelStatistics {	
-	private static List<String> topStations; // list of the top 3 stations in the given county
+/* 	Program to get all the land-use statistics for the top stations in the given counties.
+	The statistics file is indexed once (pixel -> byte offset of the pixel's row), and the index is saved
+	next to it, so the statistics for any set of stations are read directly instead of scanning the file */
+public class PixelStatistics {
+	private static int[] indexPixels; // pixels in the statistics file, sorted
+	private static long[] indexOffsets; // byte offset of the statistics row used for each pixel
 
 	public static void main(String[] args) {
-		topStations = new ArrayList<String>(3);
+
+		// Arguments should be the counties to get statistics for, followed by an optional
+		// "-top [number of stations]" (default 3) or "-all" for every station in the county
 
 		// filename with all the pixel statistics
 		String filename = "PixelStatisticsNJ.csv";
 
-		// get name of county we are working with
-		String countyName = args[0].toLowerCase();
+		List<String> counties = new ArrayList<String>();
+		int limit = 3; // number of stations to get statistics for
 
-		// get the top 3 stations
-		getTopStations(countyName);
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-all")) limit = Integer.MAX_VALUE;
+			else if (args[i].equals("-top")) limit = Integer.parseInt(args[++i]);
+			else counties.add(args[i].toLowerCase()); // get name of county we are working with
+		}
 
-		// get land-use statistics for the top 3 pixels
-		List<Double[]> statistics = getStatistics(filename);
+		if (counties.isEmpty()) {
+			System.out.println("Must have at least one argument: [county name] ... [-top number of stations | -all]");
+			return;
+		}
+
+		// get the pixel index for the statistics file, building it if needed
+		if (!getIndex(filename)) return;
 
 		// print header
 		System.out.println("County\tPixel\tLatitude\tLongitude\tPopulation\tEmployment\tSchool Enrollment\tActivity Locations");
-		for (String station : topStations) {
-			Double[] stats = statistics.get(topStations.indexOf(station));
 
-			System.out.print(countyName.toUpperCase() + "\t" + station);
+		for (String countyName : counties) {
+			// get the top stations
+			List<String> topStations = getTopStations(countyName, limit);
 
-			for (int i = 0; i < 6; i++) {
-				System.out.print("\t" + stats[i]);
-			}
+			// get land-use statistics for the top pixels
+			List<Double[]> statistics = getStatistics(filename, topStations);
 
-			System.out.println();
+			for (int s = 0; s < topStations.size(); s++) {
+				Double[] stats = statistics.get(s);
+
+				System.out.print(countyName.toUpperCase() + "\t" + topStations.get(s));
+
+				for (int i = 0; i < 6; i++) {
+					System.out.print("\t" + ((stats == null) ? "NA" : stats[i]));
+				}
+
+				System.out.println();
+			}
 		}
 
 	}
 
-	// gets the land-use statistics for the saved pixels
-	public static List<Double[]> getStatistics(String filename) {
+	// gets the land-use statistics for the given pixels, using the pixel index to read only their rows.
+	// statistics are returned in the same order as the pixels (null if a pixel is not in the file)
+	public static List<Double[]> getStatistics(String filename, List<String> pixels) {
 		List<Double[]> statistics = new ArrayList<Double[]>();
-		BufferedReader reader = null;
+		RandomAccessFile file = null;
 
 		try {
-			String line;
-			reader = new BufferedReader(new FileReader(filename));
-			line = reader.readLine(); // read first header line
-			line = reader.readLine(); // read second header line
+			file = new RandomAccessFile(filename, "r");
 
-			String currentPixel = "";
-			String previousLine = "";
+			for (String pixel : pixels) {
+				int index = Arrays.binarySearch(indexPixels, Pixel.parse(pixel));
+				if (index < 0) {
+					statistics.add(null);
+					continue;
+				}
 
-			// read in the doc line by line until the end of the file 
-			// or until all the statistics have been found
-			while ((line = reader.readLine()) != null && statistics.size() < 3) {
-				String[] splitLine = line.split(","); // split the data
+				// read the row saved for the pixel
+				file.seek(indexOffsets[index]);
+				String[] info = file.readLine().split(",");
+
+				// create the array to save the statistics
+				Double[] stats = new Double[6];
+				stats[0] = Double.parseDouble(info[8]); // save latitude
+				stats[1] = Double.parseDouble(info[9]); // save longitude
+				stats[2] = Double.parseDouble(info[14]); // save population
+				stats[3] = Double.parseDouble(info[15]); // save employment
+				stats[4] = Double.parseDouble(info[16]); // save school slots
+				stats[5] = Double.parseDouble(info[13]); // save activity points
+
+				statistics.add(stats); // save the information
+			}
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (file != null){
+				try {file.close();} catch (Exception e) {}
+			}
+		}
+		return statistics;
+	}
 
-				String newPixel = splitLine[7] + ", " + splitLine[6]; // get the pixel
+	// loads the pixel index of the statistics file, building (and saving) it first if it is missing or out of date.
+	// returns false if there is no index
+	public static boolean getIndex(String filename) {
+		File index = new File(indexName(filename));
+
+		if (index.exists() && index.lastModified() >= new File(filename).lastModified()) {
+			if (readIndex(index.getPath())) return true;
+		}
 
-				if (!newPixel.equals(currentPixel)) {
+		if (!buildIndex(filename)) return false;
+		writeIndex(index.getPath());
+		return true;
+	}
+
+	// returns the name of the index file for the statistics file (PixelStatisticsNJ.csv -> PixelStatisticsNJ.idx)
+	public static String indexName(String filename) {
+		int dot = filename.lastIndexOf('.');
+		if (dot > filename.lastIndexOf('/')) filename = filename.substring(0, dot);
+		return filename + ".idx";
+	}
+
+	// scans the statistics file once, saving the offset of the row used for each pixel.
+	// every pixel has a block of consecutive rows, and the statistics come from the last row of its (first) block
+	private static boolean buildIndex(String filename) {
+		TreeMap<Integer, Long> offsets = new TreeMap<Integer, Long>();
+		InputStream in = null;
+
+		try {
+			in = new BufferedInputStream(new FileInputStream(filename), 1 << 16);
+			long[] position = new long[1]; // offset of the next line, updated as lines are read
+
+			readLine(in, position); // read first header line
+			readLine(in, position); // read second header line
+
+			int currentPixel = -1;
+			long previousOffset = -1;
+			long offset = position[0];
+			String line;
 
-					if (topStations.contains(currentPixel)) {
-						// split the previous line to get relevant information
-						String[] info = previousLine.split(",");
+			while ((line = readLine(in, position)) != null) {
+				String[] splitLine = line.split(","); // split the data
 
-						// create the array to save the statistics
-						Double[] stats = new Double[6];
-						stats[0] = Double.parseDouble(info[8]); // save latitude
-						stats[1] = Double.parseDouble(info[9]); // save longitude
-						stats[2] = Double.parseDouble(info[14]); // save population
-						stats[3] = Double.parseDouble(info[15]); // save employment
-						stats[4] = Double.parseDouble(info[16]); // save school slots
-						stats[5] = Double.parseDouble(info[13]); // save activity points						
+				int newPixel = Pixel.parse(splitLine[7] + ", " + splitLine[6]); // get the pixel
 
-						statistics.add(topStations.indexOf(currentPixel), stats); // save the information
-						// System.out.println(statistics.size());
-					}
+				if (newPixel != currentPixel) {
+					if (currentPixel != -1 && !offsets.containsKey(currentPixel))
+						offsets.put(currentPixel, previousOffset);
 
 					currentPixel = newPixel;
 				}
-				previousLine = line;
+				previousOffset = offset;
+				offset = position[0];
 			}
+
+			// save the last block of the file
+			if (currentPixel != -1 && !offsets.containsKey(currentPixel))
+				offsets.put(currentPixel, previousOffset);
 		}
 		catch(Exception e) {
 			e.printStackTrace();
+			return false;
 		}
 		finally {
-			if (reader != null){
-				try {reader.close();} catch (Exception e) {}
+			if (in != null){
+				try {in.close();} catch (Exception e) {}
+			}
+		}
+
+		indexPixels = new int[offsets.size()];
+		indexOffsets = new long[offsets.size()];
+		int i = 0;
+		for (int pixel : offsets.keySet()) {
+			indexPixels[i] = pixel;
+			indexOffsets[i] = offsets.get(pixel);
+			i++;
+		}
+
+		return true;
+	}
+
+	// reads a line of the file byte by byte, keeping track of the offset of the next line
+	private static String readLine(InputStream in, long[] position) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b = in.read();
+		if (b < 0) return null;
+
+		while (b >= 0 && b != '\n') {
+			if (b != '\r') line.append((char) b);
+			position[0]++;
+			b = in.read();
+		}
+		if (b == '\n') position[0]++;
+
+		return line.toString();
+	}
+
+	// saves the pixel index
+	private static void writeIndex(String filename) {
+		DataOutputStream out = null;
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+			out.writeInt(indexPixels.length);
+			for (int i = 0; i < indexPixels.length; i++) {
+				out.writeInt(indexPixels[i]);
+				out.writeLong(indexOffsets[i]);
+			}
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (out != null){
+				try {out.close();} catch (Exception e) {}
 			}
 		}
-		return statistics;
 	}
 
-	// gets the top 3 stations from the saved file
-	public static void getTopStations(String countyName) {
+	// loads a saved pixel index. returns false if it could not be read
+	private static boolean readIndex(String filename) {
+		DataInputStream in = null;
+
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)));
+			int N = in.readInt();
+			indexPixels = new int[N];
+			indexOffsets = new long[N];
+			for (int i = 0; i < N; i++) {
+				indexPixels[i] = in.readInt();
+				indexOffsets[i] = in.readLong();
+			}
+			return true;
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+		finally {
+			if (in != null){
+				try {in.close();} catch (Exception e) {}
+			}
+		}
+	}
+
+	// gets the top stations from the saved file (up to the given limit)
+	public static List<String> getTopStations(String countyName, int limit) {
+		List<String> topStations = new ArrayList<String>();
 		String filename = "Stations/" + countyName + ".txt";
 		BufferedReader reader = null;
 
@@ -101,10 +255,10 @@ public class PixelStatistics {
 			String line;
 			reader = new BufferedReader(new FileReader(filename));
 
-			// read in the top 3 stations of the county
-			for (int i = 0; i < 3; i++) {
+			// read in the top stations of the county
+			while (topStations.size() < limit && (line = reader.readLine()) != null) {
 				// save the pixel with the decimal values stripped
-				topStations.add(reader.readLine().replace(".0", ""));
+				topStations.add(line.replace(".0", ""));
 			}
 		}
 		catch(Exception e) {
@@ -115,6 +269,8 @@ public class PixelStatistics {
 				try {reader.close();} catch (Exception e) {}
 			}
 		}
+
+		return topStations;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+/* Pixel totals
+   Tabulates the trips that originate from each pixel: total trips, intercounty trips,
+   riders, average time between departures and average AVO.
+
+   Counters are kept in flat primitive arrays. A grid over the bounded pixel space maps each
+   pixel to its slot in those arrays, and each slot keeps a primitive buffer of departure times
+   that is only sorted once, when the results are printed
+*/
+
+import java.util.*;
+
+public class PixelTotals implements TripAggregator {
+	private static final int INITIAL_SIDE = 512; // initial width/height of the pixel grid (NJ pixels run to ~340)
+
+	private int side; // width/height of the pixel grid
+	private int[] grid; // slot + 1 of each pixel (x * side + y), 0 if the pixel has no trips yet
+
+	private int slots; // # of pixels with trips
+	private int[] pixels; // pixel of each slot
+	private long[] trips; // total trips of each slot
+	private long[] intercounty; // total intercounty trips of each slot
+	private long[] riders; // total riders of each slot
+	private double[] avo; // sum of AVOs of each slot
+	private double[][] departures; // departure times of each slot
+	private int[] numDepartures; // # of departure times saved for each slot
+
+	private String countyName; // county of the last trip added
+
+	public PixelTotals() {
+		side = INITIAL_SIDE;
+		grid = new int[side * side];
+
+		slots = 0;
+		pixels = new int[256];
+		trips = new long[256];
+		intercounty = new long[256];
+		riders = new long[256];
+		avo = new double[256];
+		departures = new double[256][];
+		numDepartures = new int[256];
+
+		countyName = "";
+	}
+
+	public void add(TripReader trip) {
+		int slot = slot(Pixel.pack(trip.oX(), trip.oY()));
+
+		trips[slot]++;
+		riders[slot] += trip.totalRiders();
+		avo[slot] += trip.avo();
+
+		// if intercounty trip
+		if (!trip.dCounty().equals(trip.aCounty())) intercounty[slot]++;
+
+		// save departure time
+		if (numDepartures[slot] == departures[slot].length)
+			departures[slot] = Arrays.copyOf(departures[slot], 2 * numDepartures[slot]);
+		departures[slot][numDepartures[slot]++] = trip.dTime();
+
+		countyName = trip.dCounty();
+	}
+
+	/* Returns the county of the last trip added */
+	public String countyName() {
+		return countyName;
+	}
+
+	public void print() {
+		// print header
+		System.out.println("County Name\tPixel\tTotal Trips\tTotal Intercounty Trips\tTotal Riders\tAverage Time b/w Trips\tAverage AVO");
+
+		// pixels are listed in the order of their "x, y" names
+		TreeMap<String, Integer> order = new TreeMap<String, Integer>();
+		for (int slot = 0; slot < slots; slot++)
+			order.put(Pixel.toString(pixels[slot]), slot);
+
+		for (String pixel : order.keySet()) {
+			int slot = order.get(pixel);
+			double total = trips[slot];
+
+			System.out.println(countyName + "\t" + pixel + "\t" + total + "\t" + (double) intercounty[slot] + "\t"
+				+ (double) riders[slot] + "\t" + departureGaps(slot)/total + "\t" + avo[slot]/total);
+		}
+	}
+
+	/* 	Returns the sum of the times between consecutive departures from the given slot.
+		Like the original tabulation, the running sum is kept as an int */
+	private int departureGaps(int slot) {
+		double[] times = departures[slot];
+		int N = numDepartures[slot];
+		Arrays.sort(times, 0, N);
+
+		int sum = 0;
+		for (int i = 1; i < N; i++)
+			sum += times[i] - times[i-1]; // repeated times add nothing, as if they were only saved once
+
+		return sum;
+	}
+
+	/* Returns the slot of the given pixel, creating one if the pixel has no trips yet */
+	private int slot(int pixel) {
+		int x = Pixel.x(pixel);
+		int y = Pixel.y(pixel);
+		if (x >= side || y >= side) growGrid(Math.max(x, y) + 1);
+
+		int index = x * side + y;
+		if (grid[index] != 0) return grid[index] - 1;
+
+		if (slots == pixels.length) {
+			int length = 2 * slots;
+			pixels = Arrays.copyOf(pixels, length);
+			trips = Arrays.copyOf(trips, length);
+			intercounty = Arrays.copyOf(intercounty, length);
+			riders = Arrays.copyOf(riders, length);
+			avo = Arrays.copyOf(avo, length);
+			departures = Arrays.copyOf(departures, length);
+			numDepartures = Arrays.copyOf(numDepartures, length);
+		}
+
+		int slot = slots++;
+		pixels[slot] = pixel;
+		departures[slot] = new double[16];
+		grid[index] = slot + 1;
+
+		return slot;
+	}
+
+	/* Grows the pixel grid so it holds coordinates below the given size */
+	private void growGrid(int size) {
+		int newSide = side;
+		while (newSide < size) newSide *= 2;
+
+		int[] newGrid = new int[newSide * newSide];
+		for (int slot = 0; slot < slots; slot++)
+			newGrid[Pixel.x(pixels[slot]) * newSide + Pixel.y(pixels[slot])] = slot + 1;
+
+		side = newSide;
+		grid = newGrid;
+	}
+}
@@ -0,0 +1,49 @@
+/* Service curve
+   Counts how many trips are in service during each minute of the day.
+   Trips that end after midnight wrap around to the start of the day
+*/
+
+public class ServiceCurve implements TripAggregator {
+	private int[] distVec; // # of trips in service during each minute
+
+	public ServiceCurve() {
+		distVec = new int[1442];
+	}
+
+	public void add(TripReader trip) {
+		// convert dTime and aTime to minutes
+		int dTime = (int) Math.round(trip.dTime() / 60);
+		int aTime = (int) Math.round(trip.aTime() / 60);
+
+		if (aTime > 1440) {
+			// need to wrap around time
+			for (int i = dTime; i < 1440; i++)
+				distVec[i]++;
+
+			aTime = aTime - 1440;
+
+			for (int i = 0; i < aTime; i++)
+				distVec[i]++;
+		}
+		else {
+			for (int i = dTime; i < aTime; i++)
+				distVec[i]++;
+		}
+	}
+
+	/* Returns the largest number of trips in service at once */
+	public int max() {
+		int max = 0;
+		for (int i = 0; i < distVec.length; i++)
+			if (distVec[i] > max) max = distVec[i];
+
+		return max;
+	}
+
+	public void print() {
+		for (int i = 0; i < distVec.length; i++)
+			System.out.println(distVec[i]);
+
+		System.out.println("Max value: " + max());
+	}
+}
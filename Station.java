@@ -11,6 +11,14 @@ public class Station {
 	TreeSet<Taxi> aTrips;
 	int intercountyDnodes; // number of intercounty nodes accounted for by a foreign pixel
 	int intercountyAnodes;
+	boolean modified; // whether taxis have been added or removed since this was last cleared
+	int id; // id of the station in its county's registry (also its position in the distance matrix)
+	StationRegistry registry; // registry of the station's county, null if it was not registered
+	StationDistances distances; // distance matrix of the station's county, null if there is none
+	StationLedger ledger = new StationLedger(); // running totals of the taxis in dTrips and aTrips
+	private boolean milesCounted; // whether emptyMiles and tripMiles are up to date with dTrips
+	private double emptyMiles; // total empty miles of the departures, when counted
+	private double tripMiles; // total trip miles of the departures, when counted
 
 	/* 	Initialize a station for the station optimization problem 
 		Very specfic / unique conditions. Do not use for main optimization. */
@@ -51,6 +59,11 @@ public class Station {
 		and if departures are within 5 minutes of each other and within 20% max circuity.
 		NOTE: at this point, simulation is dealing with an infinite fleet where every taxi only has one trip */
 	public List<Station> initializeDepartures(List<Station> stations) {
+		return initializeDepartures(stations, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/* First round of optimization, only for the departures between the given times */
+	public List<Station> initializeDepartures(List<Station> stations, double from, double to) {
 
 		TreeMap<Double, List<Taxi>> deleted = new TreeMap<Double, List<Taxi>>();
 		TreeSet<Taxi> added = new TreeSet<Taxi>();
@@ -58,7 +71,7 @@ public class Station {
 		System.out.println(totalDepartureNodes() +"\t"+totalArrivalNodes());
 
 		int count = 0;
-		for (Taxi dTaxi : dTrips) {
+		for (Taxi dTaxi : departuresBetween(from, to)) {
 			boolean optimized = false;
 
 			Trip thisTrip = dTaxi.currentTrip();
@@ -144,12 +157,17 @@ public class Station {
 		arrival and is headed for a pixel in the foreign county. If there is no optimization to be made,
 		sends the empty arrival taxi to closest station in the foreign county */
 	public List<Station> intercountyOptimization(List<Station> stations) {
+		return intercountyOptimization(stations, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/* Second round of optimization, only for the arrivals and departures between the given times */
+	public List<Station> intercountyOptimization(List<Station> stations, double from, double to) {
 		TreeSet<Taxi> deletedDepartures = new TreeSet<Taxi>();
 		TreeMap<Taxi, Taxi> updatedTaxis = new TreeMap<Taxi, Taxi>(new ArrivalComparator());
 
 		int count = 0;
 		
-		for (Taxi aTaxi : aTrips) {
+		for (Taxi aTaxi : arrivalsBetween(from, to)) {
 			if (updatedTaxis.containsKey(aTaxi)) continue;
 			if (aTaxi.oStation() != null) continue; // only deal with intercounty trips
 			// int count = 0;
@@ -227,7 +245,7 @@ public class Station {
 		updatedTaxis = new TreeMap<Taxi, Taxi>();
 
 		double emptyMiles = 0;
-		for (Taxi taxi : dTrips) {
+		for (Taxi taxi : departuresBetween(from, to)) {
 			if (taxi.cStation() == null) {
 
 				// find closest station to last pixel
@@ -265,11 +283,16 @@ public class Station {
 		and is headed for a pixel within the max circuity of the origin of the arrival taxi
 		NOTE: for round 1, simulation is still technically an infinite fleet since every taxi has one trip */
 	public List<Station> optimizeEmptyMiles(List<Station> stations) {
+		return optimizeEmptyMiles(stations, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/* Third round of optimization, only for the departures between the given times */
+	public List<Station> optimizeEmptyMiles(List<Station> stations, double from, double to) {
 		
 		TreeMap<Taxi, Taxi> updatedTaxis = new TreeMap<Taxi, Taxi>();
 		TreeSet<Taxi> deletedArrivals = new TreeSet<Taxi>(new ArrivalComparator());
 
-		for (Taxi dTaxi : dTrips) {
+		for (Taxi dTaxi : departuresBetween(from, to)) {
 
 			if (updatedTaxis.containsKey(dTaxi)) continue;
 
@@ -353,8 +376,8 @@ public class Station {
 				System.out.println("round-trip taxi");
 				System.out.println("Taxi trips: "+taxi.numTrips());
 				System.out.println("Taxi nodes: "+taxi.totalTripNodes()+"\t"+taxi.currentTrip().nodes());
-				System.out.println("Origin pixel: "+taxi.currentTrip().oPixel());
-				System.out.println("Current pixel "+taxi.currentTrip().currentPixel());
+				System.out.println("Origin pixel: "+Pixel.toString(taxi.currentTrip().oPixel()));
+				System.out.println("Current pixel "+Pixel.toString(taxi.currentTrip().currentPixel()));
 				System.out.println();
 			}
 
@@ -386,6 +409,7 @@ public class Station {
 			}
 			emptyMiles += taxi.emptyMiles();
 		}
+		milesCounted = false;
 		System.out.println(emptyMiles+" empty miles");
 
 		System.out.println("---------");
@@ -412,10 +436,10 @@ public class Station {
 
 				if (!dTrips.contains(taxi)) continue;
 
-				dTrips.remove(dTaxi);
-				dTrips.remove(taxi);
-				aTrips.remove(dTaxi);
-				aTrips.remove(taxi);
+				removeFromDepartures(dTaxi);
+				removeFromDepartures(taxi);
+				removeFromArrivals(dTaxi);
+				removeFromArrivals(taxi);
 				// dTaxi.removeAllTraces(stations)
 
 				if (taxi == null || dTaxi == null) System.out.println("deleted all traces of the taxi");
@@ -423,7 +447,7 @@ public class Station {
 				updated.addTrips(taxi);
 				updated.addTrips(dTaxi);
 
-				dTrips.add(updated);
+				addToDepartures(updated);
 
 				break; // break once optimized
 			}
@@ -438,38 +462,63 @@ public class Station {
 		if (!(obj instanceof Station)) return false;
 		Station that = (Station) obj;
 
-		// stations are equal if centers are the same
+		// registered stations are equal if they have the same id
+		if (registry != null && that.registry == registry) return id == that.id;
+
+		// otherwise, stations are equal if centers are the same
 		if (cx != that.cx) return false;
 		if (cy != that.cy) return false;
 	
 		return true;		
 	}
 
+	public int hashCode() {
+		return 31 * Double.hashCode(cx) + Double.hashCode(cy);
+	}
+
 	public boolean addDeparture(Taxi taxi) {
-		return dTrips.add(taxi);
+		modified = true;
+		return addToDepartures(taxi);
 	}
 
 	public boolean addArrival(Taxi taxi) {
-		return aTrips.add(taxi);
+		modified = true;
+		return addToArrivals(taxi);
 	}
 
 	/* Returns distance to another station in miles */
-	public Double distanceTo(Station that) {
+	public double distanceTo(Station that) {
 		if (that == null) return Double.POSITIVE_INFINITY;
 
-		// return 1.2 * the cartesian distance between the center of the two stations
-		// NOTE: there is a scalar of one half because each pixel is 1/4 square miles
-		return (1.2 * Math.sqrt(Math.pow(cx-that.cx, 2) + Math.pow(cy-that.cy, 2))/2);
+		// read it from the distance matrix, if both stations are in it
+		if (distances != null && that.distances == distances) return distances.distance(id, that.id);
 
+		return distance(this, that);
+	}
+
+	/* Returns the time to drive to another station in seconds */
+	public double travelTimeTo(Station that) {
+		if (that == null) return Double.POSITIVE_INFINITY;
+
+		// read it from the distance matrix, if both stations are in it
+		if (distances != null && that.distances == distances) return distances.travelTime(id, that.id);
+
+		return PixelDistances.seconds(cx - that.cx, cy - that.cy);
+	}
+
+	/* Returns the distance between two stations in miles */
+	static double distance(Station s1, Station s2) {
+		return PixelDistances.miles(s1.cx - s2.cx, s1.cy - s2.cy);
 	}
 
 	/* Returns the distance to another pixel in miles */
-	public double distanceTo(String pixel) {
-		String[] coordinates = pixel.split(", ");
-		double x = Double.parseDouble(coordinates[0]);
-		double y = Double.parseDouble(coordinates[1]);		
+	public double distanceTo(int pixel) {
+		return PixelDistances.miles(cx - Pixel.x(pixel), cy - Pixel.y(pixel));
+	}
 
-		return (1.2 * Math.sqrt(Math.pow(cx-x, 2) + Math.pow(cy-y, 2))/2);
+	/* Returns the time to drive to another pixel in seconds */
+	public double travelTimeTo(int pixel) {
+		return PixelDistances.seconds(cx - Pixel.x(pixel), cy - Pixel.y(pixel));
 	}
 
 	public String toString() {
@@ -487,42 +536,98 @@ public class Station {
 	}
 
 	public double totalEmptyMiles() {
-		double miles = 0;
-		for (Taxi dTaxi : dTrips)
-			miles += dTaxi.emptyMiles();
-
-		return miles;
+		countMiles();
+		return emptyMiles;
 	}
 
 	public double totalTripMiles() {
-		double miles = 0;
-		for (Taxi dTaxi : dTrips)
-			miles += dTaxi.totalTripMiles();
+		countMiles();
+		return tripMiles;
+	}
+
+	/* 	Sum up the miles of the departures, if they changed since they were last summed.
+		The miles are summed in order every time, so the totals come out exactly the same as before */
+	private void countMiles() {
+		if (milesCounted) return;
 
-		return miles;
+		emptyMiles = 0;
+		tripMiles = 0;
+		for (Taxi dTaxi : dTrips) {
+			emptyMiles += dTaxi.emptyMiles();
+			tripMiles += dTaxi.totalTripMiles();
+		}
+		milesCounted = true;
 	}
 
 	public boolean removeArrival(Taxi aTaxi) {
-		return aTrips.remove(aTaxi);
+		modified = true;
+		return removeFromArrivals(aTaxi);
 	}
 
 	public boolean removeDeparture(Taxi dTaxi) {
-		return dTrips.remove(dTaxi);
+		modified = true;
+		return removeFromDepartures(dTaxi);
 	}
 
-	public int totalDepartureNodes() {
-		int nodes = 0;
-		for (Taxi dTaxi : dTrips) 
-			nodes += dTaxi.totalTripNodes();
+	/* Helpers that change the lists and keep the ledger up to date, without marking the station as modified */
+	private boolean addToDepartures(Taxi taxi) {
+		if (!dTrips.add(taxi)) return false;
+		ledger.addDeparture(taxi);
+		milesCounted = false;
+		return true;
+	}
+
+	private boolean removeFromDepartures(Taxi taxi) {
+		if (!dTrips.remove(taxi)) return false;
+		ledger.removeDeparture(taxi);
+		milesCounted = false;
+		return true;
+	}
+
+	private boolean addToArrivals(Taxi taxi) {
+		if (!aTrips.add(taxi)) return false;
+		ledger.addArrival(taxi);
+		return true;
+	}
 
-		return nodes;
+	private boolean removeFromArrivals(Taxi taxi) {
+		if (!aTrips.remove(taxi)) return false;
+		ledger.removeArrival(taxi);
+		return true;
+	}
+
+	/* Returns the departures from this station that leave between the given times */
+	public SortedSet<Taxi> departuresBetween(double from, double to) {
+		if (from == Double.NEGATIVE_INFINITY && to == Double.POSITIVE_INFINITY) return dTrips;
+
+		Taxi lowerbound = new Taxi();
+		lowerbound.departureComparison(from);
+		Taxi upperbound = new Taxi();
+		upperbound.departureComparison(to);
+		upperbound.arrivalComparison(Double.POSITIVE_INFINITY);
+
+		return dTrips.subSet(lowerbound, true, upperbound, true);
+	}
+
+	/* Returns the arrivals to this station that become available between the given times */
+	public SortedSet<Taxi> arrivalsBetween(double from, double to) {
+		if (from == Double.NEGATIVE_INFINITY && to == Double.POSITIVE_INFINITY) return aTrips;
+
+		Taxi lowerbound = new Taxi();
+		lowerbound.arrivalComparison(from);
+		lowerbound.departureComparison(Double.NEGATIVE_INFINITY);
+		Taxi upperbound = new Taxi();
+		upperbound.arrivalComparison(to);
+
+		return aTrips.subSet(lowerbound, true, upperbound, true);
+	}
+
+	public int totalDepartureNodes() {
+		return ledger.departureNodes();
 	}
 
 	public int totalArrivalNodes() {
-		int nodes = 0;
-		for (Taxi aTaxi : aTrips)
-			nodes += aTaxi.totalTripNodes();
-		return nodes;
+		return ledger.arrivalNodes();
 	}
 
 	private boolean withinRange(Station start, Station end) {
@@ -0,0 +1,79 @@
+/* Station arrays
+   The station centers kept as contiguous x and y arrays, with a kernel that finds the closest
+   station for a whole block of pixels at once. The kernel goes through the stations one at a time,
+   and updates every pixel of the block for that station in a tight loop over primitive arrays
+   without branches, which the JIT compiler can turn into vector instructions.
+   Distances use the same formula as Station.distanceTo, so the closest stations are the same
+*/
+
+import java.util.*;
+
+public class StationArrays {
+	public static final int TIE = -1; // marks pixels that are as close to several stations
+	public static final int BLOCK = 256; // pixels handled by the kernel at a time
+
+	private Station[] stations; // stations, in the order of the list
+	private double[] x; // xPixel of each station's center
+	private double[] y; // yPixel of each station's center
+
+	public StationArrays(List<Station> stations) {
+		this.stations = stations.toArray(new Station[stations.size()]);
+		x = new double[this.stations.length];
+		y = new double[this.stations.length];
+
+		for (int s = 0; s < this.stations.length; s++) {
+			x[s] = this.stations[s].cx;
+			y[s] = this.stations[s].cy;
+		}
+	}
+
+	public int size() {
+		return stations.length;
+	}
+
+	/* Returns the station at the given position of the list */
+	public Station get(int station) {
+		return stations[station];
+	}
+
+	/* 	Finds the closest station to each of the given pixels (up to BLOCK at a time). Saves the position of the
+		closest station in the list, or TIE if several stations are as close (or there are no stations) */
+	public void nearest(int[] pixels, int count, int[] closest) {
+		double[] px = new double[BLOCK];
+		double[] py = new double[BLOCK];
+		double[] minDist = new double[BLOCK];
+		int[] ties = new int[BLOCK];
+
+		for (int start = 0; start < count; start += BLOCK) {
+			int n = Math.min(BLOCK, count - start);
+
+			for (int i = 0; i < n; i++) {
+				px[i] = Pixel.x(pixels[start + i]);
+				py[i] = Pixel.y(pixels[start + i]);
+				minDist[i] = Double.POSITIVE_INFINITY;
+				closest[start + i] = TIE;
+				ties[i] = 0;
+			}
+
+			for (int s = 0; s < stations.length; s++) {
+				double sx = x[s];
+				double sy = y[s];
+
+				for (int i = 0; i < n; i++) {
+					double dx = sx - px[i];
+					double dy = sy - py[i];
+					double dist = (1.2 * Math.sqrt(dx*dx + dy*dy)/2);
+
+					// keep the closer station, and count the stations that are just as close
+					boolean closer = dist < minDist[i];
+					ties[i] = closer ? 0 : ((dist == minDist[i]) ? ties[i] + 1 : ties[i]);
+					closest[start + i] = closer ? s : closest[start + i];
+					minDist[i] = closer ? dist : minDist[i];
+				}
+			}
+
+			for (int i = 0; i < n; i++)
+				if (ties[i] > 0) closest[start + i] = TIE;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+/* Station distance matrix
+   Distance (in miles) between every pair of a county's stations, worked out once when the stations are loaded.
+   The travel time (in seconds) is worked out from the distance when it is read, the same way as PixelDistances.
+   Stations are found in the matrix by their id (see StationRegistry), and the matrix is only read afterwards,
+   so it can be shared between threads
+*/
+
+import java.util.*;
+
+public class StationDistances {
+	public static final int MAX_STATIONS = 1024; // largest county a matrix is made for (8 MB), counties have a few hundred stations
+
+	private int size; // # of stations
+	private double[] distance; // distance between stations i and j, at i * size + j
+
+	/* 	Builds the matrix for the registered stations. Returns null (and the stations keep computing
+		distances themselves, see PixelDistances) if there are too many stations */
+	public static StationDistances build(StationRegistry registry) {
+		if (registry.size() > MAX_STATIONS) return null;
+
+		StationDistances matrix = new StationDistances(registry);
+		for (int id = 0; id < registry.size(); id++)
+			registry.get(id).distances = matrix;
+		return matrix;
+	}
+
+	private StationDistances(StationRegistry registry) {
+		size = registry.size();
+		distance = new double[size * size];
+
+		for (int i = 0; i < size; i++) {
+			Station from = registry.get(i);
+			for (int j = 0; j < size; j++) {
+				Station to = registry.get(j);
+				distance[i * size + j] = Station.distance(from, to);
+			}
+		}
+	}
+
+	/* Returns the distance between the stations with the given ids, in miles */
+	public double distance(int from, int to) {
+		return distance[from * size + to];
+	}
+
+	/* Returns the time to drive between the stations with the given ids, in seconds */
+	public double travelTime(int from, int to) {
+		return distance[from * size + to] * 3600 / 30; // taxis drive at 30 mph
+	}
+}
@@ -0,0 +1,170 @@
+/* Station index
+   Uniform grid over the station centers, used to find the closest station to a pixel without
+   going through every station. The cells are searched in rings around the pixel's cell, until no
+   cell left can hold a station closer than the closest one found so far.
+   Gives the same station as going through the list of stations in order and keeping the first
+   closest one (stations at the same distance are settled by their current position in the list).
+   If a lookup table was made for the stations (see StationLookup), it is read first.
+   The index of registered stations is kept by their registry, along with the county's lookup table
+*/
+
+import java.util.*;
+
+public class StationIndex {
+	private static volatile StationIndex cached; // index of the last list of unregistered stations searched
+
+	private List<Station> stations; // stations that were indexed
+	private int size; // # of stations when the index was built
+
+	private double minX; // corner of the grid
+	private double minY;
+	private double cellSize; // width/height of each cell, in pixels
+	private int columns; // # of cells along x
+	private int rows; // # of cells along y
+	private int[] cellStart; // first entry of each cell (cells are numbered column * rows + row)
+	private Station[] entries; // stations, grouped by cell
+	private StationLookup lookup; // closest station to each pixel, null if there is no table
+
+	/* 	Returns the index for the given list of stations. The index is only rebuilt when a different
+		list is given, or when stations have been added to or removed from the list */
+	public static StationIndex of(List<Station> stations) {
+		if (!stations.isEmpty() && stations.get(0).registry != null) return stations.get(0).registry.index(stations);
+
+		StationIndex index = cached;
+		if (index == null || !index.isFor(stations)) {
+			index = new StationIndex(stations);
+			cached = index;
+		}
+		return index;
+	}
+
+	public StationIndex(List<Station> stations) {
+		this.stations = stations;
+		size = stations.size();
+		if (size == 0) return;
+
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		minX = Double.POSITIVE_INFINITY;
+		minY = Double.POSITIVE_INFINITY;
+		for (Station station : stations) {
+			minX = Math.min(minX, station.cx);
+			minY = Math.min(minY, station.cy);
+			maxX = Math.max(maxX, station.cx);
+			maxY = Math.max(maxY, station.cy);
+		}
+
+		// whole-pixel grid with about one station per cell
+		minX = Math.floor(minX);
+		minY = Math.floor(minY);
+		double width = maxX - minX + 1;
+		double height = maxY - minY + 1;
+		cellSize = Math.max(1, Math.ceil(Math.sqrt(width * height / size)));
+		columns = (int) (width / cellSize) + 1;
+		rows = (int) (height / cellSize) + 1;
+
+		// count the stations in each cell, then place them
+		cellStart = new int[columns * rows + 1];
+		for (Station station : stations)
+			cellStart[cell(station.cx, station.cy) + 1]++;
+		for (int c = 0; c < columns * rows; c++)
+			cellStart[c+1] += cellStart[c];
+
+		entries = new Station[size];
+		int[] next = Arrays.copyOf(cellStart, columns * rows);
+		for (Station station : stations)
+			entries[next[cell(station.cx, station.cy)]++] = station;
+	}
+
+	/* Use the given lookup table, made for the same stations, before searching the grid */
+	public void setLookup(StationLookup lookup) {
+		this.lookup = lookup;
+	}
+
+	/* Returns whether this is the index of the given list, as it is now */
+	boolean isFor(List<Station> stations) {
+		return this.stations == stations && size == stations.size();
+	}
+
+	/* Returns the closest station to the given pixel (null if there are no stations) */
+	public Station nearest(int pixel) {
+		if (size == 0) return null;
+
+		// pixels that are not ties (or outside of the table) are read straight from the lookup table
+		if (lookup != null) {
+			Station station = lookup.get(pixel);
+			if (station != null) return station;
+		}
+
+		double px = Pixel.x(pixel);
+		double py = Pixel.y(pixel);
+		int ci = column(px);
+		int cj = row(py);
+
+		Station closest = null;
+		double minDist = Double.POSITIVE_INFINITY;
+
+		for (int r = 0; ; r++) {
+			int i0 = ci - r;
+			int i1 = ci + r;
+			int j0 = cj - r;
+			int j1 = cj + r;
+
+			// search the cells in the ring r cells away from the pixel's cell
+			for (int i = Math.max(i0, 0); i <= Math.min(i1, columns - 1); i++) {
+				int step = (i == i0 || i == i1) ? 1 : j1 - j0; // sides of the ring, or only its top and bottom
+				for (int j = j0; j <= j1; j += step) {
+					if (j < 0 || j >= rows) continue;
+
+					int c = i * rows + j;
+					for (int k = cellStart[c]; k < cellStart[c+1]; k++) {
+						Station station = entries[k];
+						double dist = station.distanceTo(pixel);
+
+						// if distance is the closest dist thus far (or as close, but earlier in the list), save station
+						if (dist < minDist || (dist == minDist && rank(station) < rank(closest))) {
+							minDist = dist;
+							closest = station;
+						}
+					}
+				}
+			}
+
+			// stop once every cell has been searched
+			if (i0 <= 0 && j0 <= 0 && i1 >= columns - 1 && j1 >= rows - 1) break;
+
+			// or once every cell left is farther away than the closest station
+			if (closest != null) {
+				double gap = Double.POSITIVE_INFINITY; // distance (in pixels) to the closest cell left
+				if (i0 > 0) gap = Math.min(gap, px - (minX + i0 * cellSize));
+				if (i1 < columns - 1) gap = Math.min(gap, minX + (i1 + 1) * cellSize - px);
+				if (j0 > 0) gap = Math.min(gap, py - (minY + j0 * cellSize));
+				if (j1 < rows - 1) gap = Math.min(gap, minY + (j1 + 1) * cellSize - py);
+
+				// same formula as Station.distanceTo, so a station at the gap can't be closer by rounding
+				if (gap > 0 && (1.2 * Math.sqrt(gap*gap)/2) > minDist) break;
+			}
+		}
+
+		return closest;
+	}
+
+	/* Returns the position of the station in the list (only needed when two stations are as close) */
+	private int rank(Station station) {
+		for (int i = 0; i < stations.size(); i++)
+			if (stations.get(i) == station) return i;
+		return Integer.MAX_VALUE;
+	}
+
+	private int cell(double x, double y) {
+		return column(x) * rows + row(y);
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellSize)));
+	}
+}
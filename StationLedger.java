@@ -0,0 +1,75 @@
+/* Station ledger
+   Running totals of the taxis at a station: the # of departures and arrivals, and the trip nodes they cover.
+   The station updates its ledger as taxis are added to and removed from its lists, so the totals can be
+   read without going through every taxi. A registry also keeps a ledger for its whole county, which every
+   change to one of its stations' ledgers is rolled up into (see StationRegistry).
+
+   A taxi is taken out with the nodes it was counted with, not the ones it has at the time, so the totals
+   stay right when a taxi's trips are combined while it is still in a station's lists
+*/
+
+public class StationLedger {
+	private StationLedger total; // ledger the changes are rolled up into, null if there is none
+
+	private int departures; // # of taxis departing
+	private int arrivals; // # of taxis arriving
+	private int departureNodes; // # of trip nodes covered by the departing taxis
+	private int arrivalNodes; // # of trip nodes covered by the arriving taxis
+
+	/* Count a taxi that was added to the departures */
+	void addDeparture(Taxi taxi) {
+		taxi.departureNodes = taxi.totalTripNodes();
+		departures(1, taxi.departureNodes);
+	}
+
+	/* Stop counting a taxi that was removed from the departures */
+	void removeDeparture(Taxi taxi) {
+		departures(-1, -taxi.departureNodes);
+	}
+
+	/* Count a taxi that was added to the arrivals */
+	void addArrival(Taxi taxi) {
+		taxi.arrivalNodes = taxi.totalTripNodes();
+		arrivals(1, taxi.arrivalNodes);
+	}
+
+	/* Stop counting a taxi that was removed from the arrivals */
+	void removeArrival(Taxi taxi) {
+		arrivals(-1, -taxi.arrivalNodes);
+	}
+
+	/* Start rolling the changes of this ledger up into the given one, which takes on the current totals */
+	void rollUpInto(StationLedger total) {
+		this.total = total;
+		total.departures(departures, departureNodes);
+		total.arrivals(arrivals, arrivalNodes);
+	}
+
+	public int departures() {
+		return departures;
+	}
+
+	public int arrivals() {
+		return arrivals;
+	}
+
+	public int departureNodes() {
+		return departureNodes;
+	}
+
+	public int arrivalNodes() {
+		return arrivalNodes;
+	}
+
+	private void departures(int taxis, int nodes) {
+		departures += taxis;
+		departureNodes += nodes;
+		if (total != null) total.departures(taxis, nodes);
+	}
+
+	private void arrivals(int taxis, int nodes) {
+		arrivals += taxis;
+		arrivalNodes += nodes;
+		if (total != null) total.arrivals(taxis, nodes);
+	}
+}
@@ -0,0 +1,161 @@
+/* Station lookup table
+   Saves the closest station to every pixel of the grid, so finding it is a single array read.
+   The table is built once for a county's stations (on a fork-join pool), and saved in the cache directory
+   (Stations/nor.txt -> cache/Stations/nor.lut), so later runs only have to read it. The cache directory
+   can be deleted at any time, the tables are built again when they are needed.
+
+   Pixels that are as close to two or more stations are marked as ties: which of those is the closest
+   depends on the order of the station list at the time, so they are left to StationIndex
+*/
+
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+public class StationLookup {
+	public static final int SIDE = 512; // width/height of the pixel grid covered by the table (NJ pixels run to ~340)
+	private static final short TIE = -1; // marks pixels that are as close to several stations
+	private static final int MAGIC = 0x4C4F4F4B; // "LOOK"
+	public static final String CACHE = "cache"; // directory the tables are saved in
+
+	private Station[] stations; // stations, in the order of the list the table was made for
+	private short[] table; // position of the closest station to each pixel (x * SIDE + y), or TIE
+
+	private StationLookup(List<Station> stations) {
+		this.stations = stations.toArray(new Station[stations.size()]);
+		table = new short[SIDE * SIDE];
+	}
+
+	/* 	Returns the lookup table for the stations read from the given station file. The saved table is used
+		if it is up to date and was made for the same stations, otherwise the table is built and saved.
+		Returns null if there are too many stations for a table */
+	public static StationLookup forStations(String filename, List<Station> stations) {
+		if (stations.isEmpty() || stations.size() > Short.MAX_VALUE) return null;
+
+		File file = new File(lookupName(filename));
+		if (file.exists() && file.lastModified() >= new File(filename).lastModified()) {
+			StationLookup lookup = read(file.getPath(), stations);
+			if (lookup != null) return lookup;
+		}
+
+		StationLookup lookup = build(stations);
+		lookup.write(file.getPath());
+		return lookup;
+	}
+
+	/* Returns the name of the lookup table for a station file (Stations/nor.txt -> cache/Stations/nor.lut) */
+	public static String lookupName(String filename) {
+		int dot = filename.lastIndexOf('.');
+		if (dot > filename.lastIndexOf('/')) filename = filename.substring(0, dot);
+		return new File(CACHE, filename + ".lut").getPath();
+	}
+
+	/* Builds the table for the given stations, with the rows of the grid split over the fork-join pool */
+	public static StationLookup build(List<Station> stations) {
+		StationLookup lookup = new StationLookup(stations);
+		ForkJoinPool.commonPool().invoke(lookup.new BuildTask(new StationArrays(stations), 0, SIDE));
+		return lookup;
+	}
+
+	/* Returns the closest station to the given pixel, or null if the pixel is a tie or is not in the table */
+	public Station get(int pixel) {
+		int x = Pixel.x(pixel);
+		int y = Pixel.y(pixel);
+		if (x >= SIDE || y >= SIDE) return null;
+
+		short station = table[x * SIDE + y];
+		return (station == TIE) ? null : stations[station];
+	}
+
+	/* Saves the table, along with the stations it was made for */
+	private void write(String filename) {
+		DataOutputStream out = null;
+
+		try {
+			File parent = new File(filename).getParentFile();
+			if (parent != null) parent.mkdirs();
+
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(SIDE);
+			out.writeInt(stations.length);
+			for (Station station : stations) {
+				out.writeDouble(station.cx);
+				out.writeDouble(station.cy);
+			}
+			for (short station : table)
+				out.writeShort(station);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+		}
+		finally {
+			if (out != null){
+				try {out.close();} catch (Exception e) {}
+			}
+		}
+	}
+
+	/* Loads a saved table. Returns null if it could not be read, or was made for other stations */
+	private static StationLookup read(String filename, List<Station> stations) {
+		DataInputStream in = null;
+
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+			if (in.readInt() != MAGIC || in.readInt() != SIDE || in.readInt() != stations.size()) return null;
+
+			for (Station station : stations)
+				if (in.readDouble() != station.cx || in.readDouble() != station.cy) return null;
+
+			StationLookup lookup = new StationLookup(stations);
+			for (int i = 0; i < lookup.table.length; i++)
+				lookup.table[i] = in.readShort();
+			return lookup;
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+		finally {
+			if (in != null){
+				try {in.close();} catch (Exception e) {}
+			}
+		}
+	}
+
+	/* Task that fills in the table for a range of xPixels, a column of pixels at a time (see StationArrays) */
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int ROWS = 16; // xPixels filled in by a task without splitting it further
+
+		private StationArrays arrays; // the stations, laid out for the nearest station kernel
+		private int from;
+		private int to;
+
+		BuildTask(StationArrays arrays, int from, int to) {
+			this.arrays = arrays;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > ROWS) {
+				int middle = (from + to) / 2;
+				invokeAll(new BuildTask(arrays, from, middle), new BuildTask(arrays, middle, to));
+				return;
+			}
+
+			int[] pixels = new int[SIDE];
+			int[] closest = new int[SIDE];
+
+			for (int x = from; x < to; x++) {
+				for (int y = 0; y < SIDE; y++)
+					pixels[y] = Pixel.pack(x, y);
+
+				arrays.nearest(pixels, SIDE, closest);
+				for (int y = 0; y < SIDE; y++)
+					table[x * SIDE + y] = (closest[y] == StationArrays.TIE) ? TIE : (short) closest[y];
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/* Station registry
+   Gives each of a county's stations a dense id (0, 1, 2, ...) in the order they were loaded, and keeps
+   the stations in an array by id. Ids stay the same when the list of stations is sorted, so a station
+   can be found from its id in constant time, instead of searching the list with List.indexOf.
+   Ids can also be given along a Hilbert curve, so stations that are close together get ids that are close
+   together, and their rows of the distance matrix (see StationDistances) are next to each other in memory.
+   The registry also keeps the ledger of the whole county, which adds up the ledgers of all its stations,
+   and the county's station index and lookup table (see StationIndex)
+*/
+
+import java.util.*;
+
+public class StationRegistry {
+	private Station[] stations; // stations, by id
+	private StationLedger ledger; // totals of every station's ledger
+	private StationLookup lookup; // closest station to each pixel, null if there is no table
+	private volatile StationIndex index; // index of the last list of the stations searched
+
+	/* Registers the given stations, and sets each station's id to its position in the list */
+	public static StationRegistry register(List<Station> stations) {
+		return register(stations, false);
+	}
+
+	/* 	Registers the given stations. Ids are given in the order of the list, or along a Hilbert curve if hilbert is true.
+		The list itself is not reordered, so stations are still searched and optimized in the same order */
+	public static StationRegistry register(List<Station> stations, boolean hilbert) {
+		if (hilbert) {
+			stations = new ArrayList<Station>(stations);
+			Collections.sort(stations, new HilbertComparator());
+		}
+
+		StationRegistry registry = new StationRegistry(stations);
+		for (int id = 0; id < registry.stations.length; id++) {
+			Station station = registry.stations[id];
+			station.id = id;
+			station.registry = registry;
+			station.ledger.rollUpInto(registry.ledger);
+		}
+		return registry;
+	}
+
+	private StationRegistry(List<Station> stations) {
+		this.stations = stations.toArray(new Station[stations.size()]);
+		ledger = new StationLedger();
+	}
+
+	public int size() {
+		return stations.length;
+	}
+
+	/* Returns the station with the given id */
+	public Station get(int id) {
+		return stations[id];
+	}
+
+	/* Returns the ledger of the whole county, kept up to date as taxis are added to and removed from its stations */
+	public StationLedger ledger() {
+		return ledger;
+	}
+
+	/* Use the given lookup table, made for the registered stations, when searching them */
+	public void setLookup(StationLookup lookup) {
+		this.lookup = lookup;
+		index = null;
+	}
+
+	/* 	Returns the index for the given list of the registered stations. The index is only rebuilt when a different
+		list is given, and the lookup table is only used if the list has every station (in any order) */
+	StationIndex index(List<Station> stations) {
+		StationIndex index = this.index;
+		if (index == null || !index.isFor(stations)) {
+			index = new StationIndex(stations);
+			if (stations.size() == this.stations.length) index.setLookup(lookup);
+			this.index = index;
+		}
+		return index;
+	}
+
+	/* Returns the ids of the given stations, in the order of the list */
+	public static int[] ids(List<Station> stations) {
+		int[] ids = new int[stations.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = stations.get(i).id;
+		return ids;
+	}
+
+	/* 	Returns the registered station for the given station: the station with its id if it was registered,
+		otherwise the station in the list with the same center */
+	public static Station lookup(Station station, List<Station> stations) {
+		if (station.registry != null) return station.registry.get(station.id);
+		return stations.get(stations.indexOf(station));
+	}
+
+	/* Orders stations by the position of their center along a Hilbert curve */
+	static class HilbertComparator implements Comparator<Station> {
+		public int compare(Station s1, Station s2) {
+			return Long.compare(Pixel.hilbert(Pixel.pack(s1.cx, s1.cy)), Pixel.hilbert(Pixel.pack(s2.cx, s2.cy)));
+		}
+	}
+}
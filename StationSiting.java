@@ -0,0 +1,301 @@
+import java.util.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+/* 	Program that places the stations for a county based on the demand at each pixel, instead of
+	the order of the pixel info file (see MaxStations). Stations are chosen one at a time, each one at the
+	pixel that brings the most trips that are not yet covered within a 5 minute drive of a station
+	(greedy maximum coverage). A pixel's gain can only go down as stations are added, so gains are kept in a
+	priority queue and only worked out again when a pixel reaches the top of the queue (lazy greedy).
+	Stations are saved to "Stations/<county>.txt" in the order they were chosen */
+public class StationSiting {
+	private static final double MAX_TIME = 300; // trips are covered by a station within a 5 minute drive
+	private static final int CELL = (int) Math.ceil(MAX_TIME * 30 / 3600 * 2 / 1.2); // pixels a taxi drives in 5 minutes
+
+	private int[] pixels; // pixels with trips
+	private double[] demand; // total trips of each pixel
+	private int[][] covers; // pixels within a 5 minute drive of each pixel
+	private boolean[] covered; // whether each pixel is within a 5 minute drive of a station
+	private double totalDemand;
+
+	private List<Station> stations; // chosen stations, in the order they were chosen
+	private double coveredDemand; // trips within a 5 minute drive of the chosen stations
+
+	public static void main(String[] args) {
+
+		// Arguments should be the pixel info summary files for the counties (or "-all" for every file in
+		// the folder "PixelInfo"), followed by an optional "-stations [max number of stations]" and/or
+		// "-coverage [fraction of trips to cover]" (default is to cover every trip)
+
+		List<String> files = new ArrayList<String>();
+		int maxStations = Integer.MAX_VALUE;
+		double coverage = 1;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-stations")) maxStations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-coverage")) coverage = Double.parseDouble(args[++i]);
+			else if (args[i].equals("-all")) {
+				String[] names = new File("PixelInfo").list();
+				if (names == null) continue;
+				Arrays.sort(names);
+				for (String name : names)
+					if (name.endsWith(".txt")) files.add("PixelInfo/" + name);
+			}
+			else files.add(args[i]);
+		}
+
+		if (files.isEmpty()) {
+			System.out.println("Must have at least one argument: [pixel info file] ... | -all [-stations number] [-coverage fraction]");
+			return;
+		}
+
+		// site the stations of every county at the same time
+		List<SitingTask> tasks = new ArrayList<SitingTask>();
+		for (String filename : files) {
+			SitingTask task = new SitingTask(filename, maxStations, coverage);
+			ForkJoinPool.commonPool().execute(task);
+			tasks.add(task);
+		}
+
+		for (int i = 0; i < files.size(); i++) {
+			String filename = "Stations/" + new File(files.get(i)).getName();
+			StationSiting siting = null;
+			try {
+				siting = tasks.get(i).join();
+			}
+			catch(Exception e) {
+				e.printStackTrace();
+				continue;
+			}
+			List<Station> stations = siting.stations;
+
+			MaxStations.saveStations(filename, stations);
+			System.out.println(files.get(i) + " -> " + filename + " (" + stations.size() + " stations, "
+				+ siting.coveredDemand + " of " + siting.totalDemand + " trips covered)");
+		}
+	}
+
+	/* Read the pixels of the given pixel info file, and find the pixels that each one covers */
+	public StationSiting(String filename) throws IOException {
+		readPixels(filename);
+
+		covers = new int[pixels.length][];
+		covered = new boolean[pixels.length];
+		ForkJoinPool.commonPool().invoke(new CoverTask(hash(), 0, pixels.length));
+	}
+
+	/* 	Choose stations until the given fraction of trips is covered, or the given number of stations is reached.
+		Returns the chosen stations, in the order they were chosen */
+	public List<Station> site(int maxStations, double coverage) {
+		stations = new ArrayList<Station>();
+
+		// the first gains are the total trips each pixel covers, worked out at the same time
+		double[] gains = new double[pixels.length];
+		ForkJoinPool.commonPool().invoke(new GainTask(gains, 0, pixels.length));
+
+		PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(Math.max(1, pixels.length));
+		for (int i = 0; i < pixels.length; i++)
+			if (gains[i] > 0) queue.add(new Candidate(i, gains[i]));
+
+		while (!queue.isEmpty() && stations.size() < maxStations && coveredDemand < coverage * totalDemand) {
+			Candidate candidate = queue.poll();
+
+			// the saved gain may be out of date, so work it out again
+			candidate.gain = gain(candidate.pixel);
+			if (candidate.gain <= 0) continue;
+
+			// if another pixel might still be better, put this one back with its new gain
+			if (!queue.isEmpty() && candidate.compareTo(queue.peek()) > 0) {
+				queue.add(candidate);
+				continue;
+			}
+
+			// otherwise, it is the best pixel left: save it as a station
+			for (int j : covers[candidate.pixel])
+				covered[j] = true;
+			coveredDemand += candidate.gain;
+			stations.add(new Station(Pixel.x(pixels[candidate.pixel]), Pixel.y(pixels[candidate.pixel])));
+		}
+
+		return stations;
+	}
+
+	/* Returns the trips not yet covered within a 5 minute drive of the given pixel */
+	private double gain(int pixel) {
+		double gain = 0;
+		for (int j : covers[pixel])
+			if (!covered[j]) gain += demand[j];
+		return gain;
+	}
+
+	/* Reads the pixels and their total trips from the pixel info file (pixels listed more than once are added up) */
+	private void readPixels(String filename) throws IOException {
+		Map<Integer, Integer> indices = new HashMap<Integer, Integer>();
+		List<Integer> pixelList = new ArrayList<Integer>();
+		List<Double> demandList = new ArrayList<Double>();
+
+		BufferedReader reader = new BufferedReader(new FileReader(filename));
+		try {
+			String line = reader.readLine(); // read the header line
+
+			while ((line = reader.readLine()) != null) {
+				String[] pixelInfo = line.split("\t");
+				if (pixelInfo.length < 3) continue;
+
+				int pixel = Pixel.parse(pixelInfo[1].replace("\"", ""));
+				double trips = Double.parseDouble(pixelInfo[2]);
+
+				Integer index = indices.get(pixel);
+				if (index == null) {
+					indices.put(pixel, pixelList.size());
+					pixelList.add(pixel);
+					demandList.add(trips);
+				}
+				else demandList.set(index, demandList.get(index) + trips);
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		pixels = new int[pixelList.size()];
+		demand = new double[pixelList.size()];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = pixelList.get(i);
+			demand[i] = demandList.get(i);
+			totalDemand += demand[i];
+		}
+	}
+
+	/* Returns the pixels in each cell of a spatial hash with cells as wide as a 5 minute drive */
+	private Map<Long, List<Integer>> hash() {
+		Map<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < pixels.length; i++) {
+			long key = key(Pixel.x(pixels[i]) / CELL, Pixel.y(pixels[i]) / CELL);
+			List<Integer> cell = cells.get(key);
+			if (cell == null) {
+				cell = new ArrayList<Integer>();
+				cells.put(key, cell);
+			}
+			cell.add(i);
+		}
+		return cells;
+	}
+
+	private static long key(int x, int y) {
+		return ((long) x << 32) | (y & 0xFFFFFFFFL);
+	}
+
+	/* A pixel that could be a station, and the trips it was last found to cover */
+	private static class Candidate implements Comparable<Candidate> {
+		private int pixel;
+		private double gain;
+
+		private Candidate(int pixel, double gain) {
+			this.pixel = pixel;
+			this.gain = gain;
+		}
+
+		/* larger gains come first, then pixels listed earlier in the file */
+		public int compareTo(Candidate that) {
+			if (gain != that.gain) return (gain > that.gain) ? -1 : 1;
+			return Integer.compare(pixel, that.pixel);
+		}
+	}
+
+	/* Task that finds the pixels covered by each pixel in a range, using the spatial hash */
+	private class CoverTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int PIXELS = 1024; // pixels handled by a task without splitting it further
+
+		private Map<Long, List<Integer>> cells;
+		private int from;
+		private int to;
+
+		CoverTask(Map<Long, List<Integer>> cells, int from, int to) {
+			this.cells = cells;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > PIXELS) {
+				int middle = (from + to) / 2;
+				invokeAll(new CoverTask(cells, from, middle), new CoverTask(cells, middle, to));
+				return;
+			}
+
+			int[] found = new int[pixels.length];
+			for (int i = from; i < to; i++) {
+				int x = Pixel.x(pixels[i]) / CELL;
+				int y = Pixel.y(pixels[i]) / CELL;
+				int count = 0;
+
+				// only the pixels in the same and the 8 cells around it can be within 5 minutes
+				for (int cx = x - 1; cx <= x + 1; cx++) {
+					for (int cy = y - 1; cy <= y + 1; cy++) {
+						List<Integer> cell = cells.get(key(cx, cy));
+						if (cell == null) continue;
+
+						for (int j : cell)
+							if (Pixel.travelTime(pixels[i], pixels[j]) <= MAX_TIME) found[count++] = j;
+					}
+				}
+
+				covers[i] = Arrays.copyOf(found, count);
+			}
+		}
+	}
+
+	/* Task that works out the first gain of each pixel in a range */
+	private class GainTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private static final int PIXELS = 1024; // pixels handled by a task without splitting it further
+
+		private double[] gains;
+		private int from;
+		private int to;
+
+		GainTask(double[] gains, int from, int to) {
+			this.gains = gains;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > PIXELS) {
+				int middle = (from + to) / 2;
+				invokeAll(new GainTask(gains, from, middle), new GainTask(gains, middle, to));
+				return;
+			}
+
+			for (int i = from; i < to; i++)
+				gains[i] = gain(i);
+		}
+	}
+
+	/* Task that sites the stations for one pixel info file */
+	static class SitingTask extends RecursiveTask<StationSiting> {
+		private static final long serialVersionUID = 1L;
+		private String filename;
+		private int maxStations;
+		private double coverage;
+
+		SitingTask(String filename, int maxStations, double coverage) {
+			this.filename = filename;
+			this.maxStations = maxStations;
+			this.coverage = coverage;
+		}
+
+		protected StationSiting compute() {
+			try {
+				StationSiting siting = new StationSiting(filename);
+				siting.site(maxStations, coverage);
+				return siting;
+			}
+			catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
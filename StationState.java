@@ -0,0 +1,250 @@
+/* Station state
+   Saves the optimized state of a county's stations: every station along with the taxis in its
+   departure and arrival lists, taken before the departures are cycled. Also saves a summary of
+   each station after cycling, so a later incremental run only has to recycle the stations it changes
+*/
+
+import java.util.*;
+import java.io.*;
+
+public class StationState {
+	private static final int MAGIC = 0x53544154; // "STAT"
+
+	private List<Station> stations; // stations, in the order they were saved
+	private int[] positions; // position of each station in the saved stations, by id (-1 if not saved)
+	private byte[] snapshot; // saved stations and taxis, before cycling
+
+	/* summary of each station after cycling */
+	private int[] departures;
+	private int[] departureNodes;
+	private int[] arrivalNodes;
+	private double[] emptyMiles;
+
+	/* Take a snapshot of the given stations and their taxis. Should be called before cycling departures */
+	public StationState(List<Station> stations) {
+		this.stations = new ArrayList<Station>(stations);
+		positions = positions(this.stations);
+
+		int N = stations.size();
+		departures = new int[N];
+		departureNodes = new int[N];
+		arrivalNodes = new int[N];
+		emptyMiles = new double[N];
+
+		snapshot();
+	}
+
+	private StationState() {}
+
+	/* Retake the snapshot of the stations and their taxis. Should be called before cycling departures */
+	public void snapshot() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeStations(out, stations);
+			out.flush();
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		snapshot = bytes.toByteArray();
+	}
+
+	/* 	Save the snapshot, along with a summary of each station. The summary of the given stations,
+		whose departures have just been cycled, is updated first. The other stations keep their saved summary */
+	public void save(String filename, Collection<Station> cycled) throws IOException {
+		for (Station station : cycled)
+			summarize(station);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(snapshot.length);
+			out.write(snapshot);
+
+			for (int i = 0; i < stations.size(); i++) {
+				out.writeInt(departures[i]);
+				out.writeInt(departureNodes[i]);
+				out.writeInt(arrivalNodes[i]);
+				out.writeDouble(emptyMiles[i]);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/* Load a saved state. The stations are recreated from the snapshot, as they were before cycling */
+	public static StationState load(String filename) throws IOException {
+		StationState state = new StationState();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename), 1 << 16));
+
+		try {
+			if (in.readInt() != MAGIC) throw new IOException("Not a station state: " + filename);
+
+			state.snapshot = new byte[in.readInt()];
+			in.readFully(state.snapshot);
+			state.stations = readStations(new DataInputStream(new ByteArrayInputStream(state.snapshot)));
+			state.positions = positions(state.stations);
+
+			int N = state.stations.size();
+			state.departures = new int[N];
+			state.departureNodes = new int[N];
+			state.arrivalNodes = new int[N];
+			state.emptyMiles = new double[N];
+			for (int i = 0; i < N; i++) {
+				state.departures[i] = in.readInt();
+				state.departureNodes[i] = in.readInt();
+				state.arrivalNodes[i] = in.readInt();
+				state.emptyMiles[i] = in.readDouble();
+			}
+		}
+		finally {
+			in.close();
+		}
+
+		return state;
+	}
+
+	/* Returns the saved stations */
+	public List<Station> stations() {
+		return stations;
+	}
+
+	/* Returns the position of the given station in the saved stations */
+	public int indexOf(Station station) {
+		if (station.registry != null && station.id < positions.length) {
+			int i = positions[station.id];
+			if (i >= 0 && stations.get(i) == station) return i;
+		}
+
+		// the station was not registered, so look for it in the list
+		for (int i = 0; i < stations.size(); i++)
+			if (stations.get(i) == station) return i;
+		return -1;
+	}
+
+	public int cycledDepartures(int station) {
+		return departures[station];
+	}
+
+	public int cycledDepartureNodes(int station) {
+		return departureNodes[station];
+	}
+
+	public int cycledArrivalNodes(int station) {
+		return arrivalNodes[station];
+	}
+
+	public double cycledEmptyMiles(int station) {
+		return emptyMiles[station];
+	}
+
+	/* Returns the position of each of the given stations in the list, by id */
+	private static int[] positions(List<Station> stations) {
+		int[] positions = new int[stations.size()];
+		Arrays.fill(positions, -1);
+		for (int i = 0; i < stations.size(); i++) {
+			Station station = stations.get(i);
+			if (station.registry != null && station.id < positions.length) positions[station.id] = i;
+		}
+		return positions;
+	}
+
+	/* Update the cycled summary of the given station */
+	private void summarize(Station station) {
+		int i = indexOf(station);
+		if (i < 0) return;
+
+		departures[i] = station.totalDepartures();
+		departureNodes[i] = station.totalDepartureNodes();
+		arrivalNodes[i] = station.totalArrivalNodes();
+		emptyMiles[i] = station.totalEmptyMiles();
+	}
+
+	/* Write every station, then every taxi, then the taxis in each station's departure and arrival lists */
+	private static void writeStations(DataOutputStream out, List<Station> stations) throws IOException {
+		Map<Station, Integer> stationNumbers = new IdentityHashMap<Station, Integer>();
+		Map<Taxi, Integer> taxiNumbers = new IdentityHashMap<Taxi, Integer>();
+		List<Taxi> taxis = new ArrayList<Taxi>();
+
+		out.writeInt(stations.size());
+		for (Station station : stations) {
+			stationNumbers.put(station, stationNumbers.size());
+			out.writeDouble(station.cx);
+			out.writeDouble(station.cy);
+			out.writeInt(station.intercountyDnodes);
+			out.writeInt(station.intercountyAnodes);
+
+			for (Taxi taxi : station.dTrips)
+				if (!taxiNumbers.containsKey(taxi)) {
+					taxiNumbers.put(taxi, taxis.size());
+					taxis.add(taxi);
+				}
+			for (Taxi taxi : station.aTrips)
+				if (!taxiNumbers.containsKey(taxi)) {
+					taxiNumbers.put(taxi, taxis.size());
+					taxis.add(taxi);
+				}
+		}
+
+		out.writeInt(taxis.size());
+		for (Taxi taxi : taxis)
+			taxi.write(out, stationNumbers);
+
+		for (Station station : stations) {
+			out.writeInt(station.dTrips.size());
+			for (Taxi taxi : station.dTrips)
+				out.writeInt(taxiNumbers.get(taxi));
+
+			out.writeInt(station.aTrips.size());
+			for (Taxi taxi : station.aTrips)
+				out.writeInt(taxiNumbers.get(taxi));
+		}
+	}
+
+	/* Recreate the stations and taxis written by writeStations */
+	private static List<Station> readStations(DataInputStream in) throws IOException {
+		List<Station> stations = new ArrayList<Station>();
+
+		int N = in.readInt();
+		for (int i = 0; i < N; i++) {
+			Station station = new Station(in.readDouble(), in.readDouble());
+			station.intercountyDnodes = in.readInt();
+			station.intercountyAnodes = in.readInt();
+			stations.add(station);
+		}
+
+		// taxis are ordered by the ids of their stations (see Taxi.compareTo), so the stations are registered
+		// before any taxi is added to them
+		StationDistances.build(StationRegistry.register(stations));
+
+		Taxi[] taxis = new Taxi[in.readInt()];
+		TripTable trips = new TripTable(); // trips of every taxi
+		for (int i = 0; i < taxis.length; i++)
+			taxis[i] = new Taxi(in, stations, trips);
+
+		for (Station station : stations) {
+			int departures = in.readInt();
+			for (int i = 0; i < departures; i++)
+				station.addDeparture(taxis[in.readInt()]);
+
+			int arrivals = in.readInt();
+			for (int i = 0; i < arrivals; i++)
+				station.addArrival(taxis[in.readInt()]);
+		}
+
+		checkOrder(stations);
+		return stations;
+	}
+
+	/* Make sure every taxi that was loaded can be found in its station's lists again */
+	private static void checkOrder(List<Station> stations) throws IOException {
+		for (Station station : stations) {
+			for (Taxi taxi : station.dTrips)
+				if (!station.dTrips.contains(taxi)) throw new IOException("Departures of station " + station + " are out of order");
+			for (Taxi taxi : station.aTrips)
+				if (!station.aTrips.contains(taxi)) throw new IOException("Arrivals of station " + station + " are out of order");
+		}
+	}
+}
@@ -0,0 +1,467 @@
+import java.util.*;
+import java.io.*;
+
+/* 	Program that runs the optimization for a county in a single pass over its trips, in order of time.
+	Every combination rule in Station only looks a few minutes around a trip (departures within 5 minutes share
+	a taxi, and a taxi waits 10 minutes at a station for another departure), so each station only keeps the
+	taxis inside that window. Departures are read in order of departure time, and arrivals from other counties
+	in order of arrival time, so an arrival only becomes a taxi once it reaches its station. Taxis that can no
+	longer be combined are sent back to their origin station, where they wait to be cycled into a later departure,
+	and their itineraries are written out. The open taxis are the ones inside the windows and the ones still driving
+	a trip, instead of every trip in the day (the readers still keep a compact row for every trip they read, see TripTable).
+	NOTE: the rounds of Optimization are combined into one pass, so the fleet size can differ slightly */
+public class StreamingOptimization {
+	private static final double SHARE_WINDOW = 300; // seconds between departures that can share a taxi
+	private static final double CHAIN_WINDOW = 600; // seconds a taxi waits at a station for another departure
+
+	private String county; // county being analyzed, in all uppercase
+	private List<Station> stations; // stations for the county
+	private Map<Station, StationWindow> windows; // open taxis at each station
+
+	private ArrayDeque<Taxi> departures; // departures that can still be shared, in order of departure time
+	private Set<Taxi> sharing; // departures that can still be shared
+	private Set<Taxi> shared; // departures that already share their taxi with another departure
+	private PriorityQueue<Taxi> waiting; // taxis waiting at a station for another departure, by time available
+	private Set<Taxi> waitingTaxis; // taxis still waiting (taxis that were chained are skipped in the queue)
+	private Map<Taxi, Integer> vehicles; // vehicle driving each waiting taxi
+
+	private PrintWriter out; // where finished itineraries are written, null if they are only counted
+
+	/* totals of the finished itineraries */
+	private int fleet; // # of vehicles needed
+	private int tripsAnalyzed;
+	private int itineraries;
+	private int tripNodes;
+	private double emptyMiles;
+	private int peakOpenTaxis; // most taxis open at the same time
+
+	public static void main(String[] args) {
+
+		// Arguments should be county abbreviation in all lowercase and number of departure files for the county,
+		// followed by an optional "-out [file]" to write every finished itinerary to, and an optional "-hilbert"
+		// to number the stations along a Hilbert curve (see Optimization).
+		// Trip files are read like in Optimization. Departure files must be sorted by departure time and arrival
+		// files by arrival time, unless they have a binary trip cache (see TripCache), which is read in that order.
+		// NOTE: the arrival files (Arrivals/A*.csv) are not sorted, so convert them with TripCache first:
+		//   java TripCache Arrivals/Anor.csv ...
+
+		if (args.length < 2) {
+			System.out.println("Must have two arguments: [county name] [number of departure files] [-out file] [-hilbert]");
+			System.out.println("Trip files that are not sorted by time (like Arrivals/A*.csv) must be converted with TripCache first");
+			return;
+		}
+
+		String countyname = args[0];
+		int numFiles = Integer.parseInt(args[1]);
+		String outname = null;
+
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equals("-out")) outname = args[++i];
+			else if (args[i].equals("-hilbert")) Optimization.hilbert = true;
+			else {
+				System.out.println("Unknown option: " + args[i]);
+				return;
+			}
+		}
+
+		List<String> departureFiles = Optimization.tripFiles("Departures/", countyname, numFiles);
+		List<String> arrivalFiles = Optimization.tripFiles("Arrivals/A", countyname, numFiles);
+
+		System.out.println("\nCounty being analyzed: " + countyname.toUpperCase());
+
+		long startTime = System.currentTimeMillis(); // start keeping track of run time
+
+		// Get all the created stations for given county
+		Optimization.stations = new ArrayList<Station>();
+		Optimization.getStations("Stations/" + countyname + ".txt");
+
+		StreamingOptimization optimization = new StreamingOptimization(countyname, Optimization.stations);
+		try {
+			if (outname != null) optimization.writeTo(outname);
+			optimization.run(departureFiles, arrivalFiles);
+		}
+		catch(Exception e) {
+			e.printStackTrace();
+			return;
+		}
+		finally {
+			optimization.close();
+		}
+
+		long endTime = System.currentTimeMillis(); // get end time
+
+		/* Print Summary */
+		System.out.println(countyname.toUpperCase() + " Streaming Summary\n=============");
+		System.out.println("Total stations: " + Optimization.stations.size());
+		System.out.println("Trips analyzed: " + optimization.tripsAnalyzed);
+		System.out.println("Current total number of taxis: " + optimization.fleet);
+		System.out.println("Finished itineraries: " + optimization.itineraries);
+		System.out.println("Current number of total nodes: " + optimization.tripNodes);
+		System.out.println("Current total number of empty taxi miles: " + optimization.emptyMiles);
+		System.out.println("Most taxis open at once: " + optimization.peakOpenTaxis);
+		System.out.println("Total run time (seconds): " + (endTime - startTime)/1000);
+		System.out.println();
+	}
+
+	public StreamingOptimization(String countyname, List<Station> stations) {
+		county = countyname.toUpperCase();
+		this.stations = stations;
+		windows = new IdentityHashMap<Station, StationWindow>();
+
+		departures = new ArrayDeque<Taxi>();
+		sharing = Collections.newSetFromMap(new IdentityHashMap<Taxi, Boolean>());
+		shared = Collections.newSetFromMap(new IdentityHashMap<Taxi, Boolean>());
+		waiting = new PriorityQueue<Taxi>(64, new AvailabilityComparator());
+		waitingTaxis = Collections.newSetFromMap(new IdentityHashMap<Taxi, Boolean>());
+		vehicles = new IdentityHashMap<Taxi, Integer>();
+	}
+
+	/* Write every finished itinerary to the given file */
+	public void writeTo(String filename) throws IOException {
+		out = new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+		out.println("Vehicle\tDepart Time\tTime Available\tTrips\tTrip Nodes\tEmpty Miles\tOrigin Station\tCurrent Station");
+	}
+
+	public void close() {
+		if (out != null) out.close();
+	}
+
+	/* 	Read the trips of all the given files and finish every taxi. Departures are read in order of departure time,
+		merged with the arrivals in order of arrival time */
+	public void run(List<String> departureFiles, List<String> arrivalFiles) throws IOException {
+		List<String> files = new ArrayList<String>(departureFiles);
+		files.addAll(arrivalFiles);
+
+		TripReader[] readers = new TripReader[files.size()];
+		boolean[] arrivals = new boolean[files.size()]; // whether each file is read in order of arrival time
+		double[] times = new double[files.size()]; // time of the current trip of each file
+
+		try {
+			for (int i = 0; i < readers.length; i++) {
+				arrivals[i] = (i >= departureFiles.size());
+				readers[i] = TripReader.open(files.get(i));
+				if (readers[i] instanceof TripCache.Reader) {
+					if (arrivals[i]) ((TripCache.Reader) readers[i]).sortByArrivalTime();
+					else ((TripCache.Reader) readers[i]).sortByDepartureTime();
+				}
+				times[i] = readers[i].next() ? time(readers[i], arrivals[i]) : Double.NaN;
+			}
+
+			while (true) {
+				// find the file with the next trip (the first file, if several are at the same time)
+				int next = -1;
+				for (int i = 0; i < readers.length; i++)
+					if (!Double.isNaN(times[i]) && (next < 0 || times[i] < times[next])) next = i;
+				if (next < 0) break;
+
+				TripReader parser = readers[next];
+
+				/* only save trips with <= 5 riders */
+				if (parser.totalRiders() <= 6) {
+					Taxi taxi = Optimization.createTaxi(parser.trip(), county);
+					if (arrivals[next]) arrive(taxi);
+					else add(taxi);
+				}
+
+				if (parser.next()) {
+					double time = time(parser, arrivals[next]);
+					if (time < times[next])
+						throw new IOException(files.get(next) + " is not sorted by " + (arrivals[next] ? "arrival" : "departure")
+							+ " time. Convert it with TripCache first");
+					times[next] = time;
+				}
+				else times[next] = Double.NaN;
+			}
+		}
+		finally {
+			for (TripReader reader : readers)
+				if (reader != null) reader.close();
+		}
+
+		finish();
+	}
+
+	/* Returns the time a file is sorted by, for its current trip */
+	private static double time(TripReader reader, boolean arrival) {
+		return arrival ? reader.aTime() : reader.dTime();
+	}
+
+	/* 	Add a taxi for the next departure. Departures must be added in order of departure time */
+	public void add(Taxi taxi) {
+		tripsAnalyzed++;
+		advance(taxi.dTime());
+
+		// departures from the county wait to be shared with the departures that follow
+		if (taxi.oStation() != null) share(taxi);
+
+		// arrivals from another county wait for a departure at their current station
+		else if (taxi.cStation() != null) hold(taxi, -1);
+
+		peakOpenTaxis = Math.max(peakOpenTaxis, sharing.size() + waitingTaxis.size());
+	}
+
+	/* 	Add a taxi for the next arrival from another county, once it gets to its station. Arrivals must be added
+		in order of arrival time, merged with the departures, so that every arrival is waiting at its station
+		before the departures that leave after it are dispatched */
+	public void arrive(Taxi taxi) {
+		// arrivals that depart from the county are also in its departure files
+		if (taxi.oStation() != null) return;
+
+		tripsAnalyzed++;
+		advance(taxi.timeAvailable());
+
+		if (taxi.cStation() != null) hold(taxi, -1);
+
+		peakOpenTaxis = Math.max(peakOpenTaxis, sharing.size() + waitingTaxis.size());
+	}
+
+	/* Finish every open taxi, once there are no more trips */
+	public void finish() {
+		advance(Double.POSITIVE_INFINITY);
+		expire(Double.POSITIVE_INFINITY);
+	}
+
+	/* 	Dispatch the departures that can no longer be shared with a departure at the given time.
+		Departures are dispatched in order, so every taxi that arrives before them has already been dispatched */
+	private void advance(double time) {
+		while (!departures.isEmpty() && departures.peekFirst().dTime() < time - SHARE_WINDOW) {
+			Taxi taxi = departures.pollFirst();
+			if (sharing.remove(taxi)) dispatch(taxi);
+		}
+
+		// no departure left to dispatch leaves before the first one waiting (or before the given time),
+		// so the taxis that became available 10 minutes before that can no longer be chained
+		double next = departures.isEmpty() ? time : Math.min(time, departures.peekFirst().dTime());
+		expire(next - CHAIN_WINDOW);
+	}
+
+	/* 	Share the taxi with an earlier departure from the same station, like in Station.initializeDepartures */
+	private void share(Taxi taxi) {
+		StationWindow window = window(taxi.oStation());
+
+		// only check taxis whose nodes are < 3
+		if (taxi.currentTrip().nodes() < 3) {
+			for (Iterator<Taxi> it = window.departures.iterator(); it.hasNext(); ) {
+				Taxi other = it.next();
+
+				// only look at taxis within the 5 minutes before this one, that are not already shared
+				if (other.dTime() < taxi.dTime() - SHARE_WINDOW || shared.contains(other)) continue;
+
+				// attempt to combine initial trip nodes
+				if (taxi.combineInitialTripNodes(other)) {
+					it.remove();
+					sharing.remove(other);
+					shared.add(taxi);
+
+					// update cStation
+					if (!taxi.currentTrip().aCounty().equals(taxi.firstTrip().dCounty())) taxi.setCurrent(null);
+					else taxi.setCurrent(taxi.currentTrip().findClosestCurrentStation(stations));
+					break;
+				}
+			}
+		}
+
+		window.departures.add(taxi);
+		departures.addLast(taxi);
+		sharing.add(taxi);
+	}
+
+	/* 	Dispatch a departure: chain it to a taxi waiting at its origin station, like in Station.intercountyOptimization
+		and Station.optimizeEmptyMiles. Otherwise, cycle a taxi that returned to the station, or add a new taxi */
+	private void dispatch(Taxi taxi) {
+		StationWindow window = window(taxi.oStation());
+		remove(window.departures, taxi);
+		shared.remove(taxi);
+
+		double time = taxi.dTime();
+		expire(time - CHAIN_WINDOW); // taxis that arrived before this can no longer be chained
+
+		// intercounty departure: combine with an intercounty arrival back to the county it came from
+		if (taxi.cStation() == null) {
+			Taxi arrival = intercountyArrival(window, taxi);
+
+			if (arrival != null) {
+				release(window, arrival);
+				taxi.oStation().intercountyDnodes += taxi.totalTripNodes();
+				taxi.oStation().intercountyAnodes += arrival.totalTripNodes();
+
+				Taxi updated = new Taxi();
+				updated.addTrips(arrival);
+				updated.addTrips(taxi);
+				retire(updated, -1); // the taxi leaves the county
+				return;
+			}
+
+			// otherwise, send to the closest station to its last pixel
+			taxi.sendTo(taxi.currentTrip().findClosestCurrentStation(stations));
+		}
+
+		// chain the departure to a taxi that arrived at the station in the last 10 minutes
+		// (taxis that return to the station are cycled instead)
+		if (taxi.cStation() != taxi.oStation()) {
+			Taxi arrival = chainedArrival(window, taxi);
+
+			if (arrival != null) {
+				int vehicle = release(window, arrival);
+
+				Taxi updated = new Taxi();
+				updated.addTrips(arrival);
+				updated.addTrips(taxi);
+				hold(updated, vehicle);
+				return;
+			}
+		}
+
+		// cycle the first taxi that returned to the station in time, or add a new one
+		Parked parked = window.parked.peek();
+		if (parked != null && parked.time <= time) {
+			window.parked.poll();
+			hold(taxi, parked.vehicle);
+		}
+		else hold(taxi, fleet++);
+	}
+
+	/* 	Returns the first intercounty arrival at the station in the 10 minutes before the departure,
+		that came from the county the departure is headed to (null if there is none) */
+	private Taxi intercountyArrival(StationWindow window, Taxi dTaxi) {
+		Taxi first = null;
+
+		for (Taxi aTaxi : window.arrivals) {
+			if (aTaxi.oStation() != null) continue; // only deal with intercounty trips
+			if (aTaxi.timeAvailable() > dTaxi.dTime() || aTaxi.timeAvailable() < dTaxi.dTime() - CHAIN_WINDOW) continue;
+			if (!dTaxi.currentTrip().aCounty().equals(aTaxi.currentTrip().dCounty())) continue;
+
+			if (first == null || aTaxi.timeAvailable() < first.timeAvailable()) first = aTaxi;
+		}
+
+		return first;
+	}
+
+	/* 	Returns the arrival at the station in the 10 minutes before the departure, whose origin station is where
+		the departure is headed. Otherwise, the arrival whose origin station is closest (null if there is none) */
+	private Taxi chainedArrival(StationWindow window, Taxi dTaxi) {
+		Taxi best = null;
+		double closestDistance = Double.POSITIVE_INFINITY;
+
+		for (Taxi aTaxi : window.arrivals) {
+			if (aTaxi.oStation() == null) continue; // intercounty arrivals are only combined with intercounty departures
+			if (aTaxi.timeAvailable() > dTaxi.dTime() || aTaxi.timeAvailable() < dTaxi.dTime() - CHAIN_WINDOW) continue;
+
+			if (dTaxi.cStation() == aTaxi.oStation()) {
+				if (closestDistance > 0 || aTaxi.timeAvailable() < best.timeAvailable()) best = aTaxi;
+				closestDistance = 0;
+			}
+			else if (closestDistance > 0) {
+				double distance = dTaxi.cStation().distanceTo(aTaxi.oStation());
+				if (distance < closestDistance || (distance == closestDistance && aTaxi.timeAvailable() < best.timeAvailable())) {
+					best = aTaxi;
+					closestDistance = distance;
+				}
+			}
+		}
+
+		return best;
+	}
+
+	/* Hold the taxi at its current station, waiting for another departure */
+	private void hold(Taxi taxi, int vehicle) {
+		window(taxi.cStation()).arrivals.add(taxi);
+		waiting.add(taxi);
+		waitingTaxis.add(taxi);
+		vehicles.put(taxi, vehicle);
+	}
+
+	/* Stop waiting, because the taxi was chained to a departure. Returns the taxi's vehicle */
+	private int release(StationWindow window, Taxi taxi) {
+		remove(window.arrivals, taxi);
+		waitingTaxis.remove(taxi);
+		return vehicles.remove(taxi);
+	}
+
+	/* 	Finish the taxis that became available before the given time: send them back to their origin station,
+		where they can be cycled into a later departure, and retire their itineraries */
+	private void expire(double time) {
+		while (!waiting.isEmpty() && waiting.peek().timeAvailable() < time) {
+			Taxi taxi = waiting.poll();
+			if (!waitingTaxis.remove(taxi)) continue; // taxi was already chained
+
+			remove(window(taxi.cStation()).arrivals, taxi);
+			int vehicle = vehicles.remove(taxi);
+
+			// taxis from another county are not part of the fleet
+			if (taxi.oStation() == null) {
+				retire(taxi, -1);
+				continue;
+			}
+
+			// return any taxi that hasn't already been returned to the station
+			if (taxi.cStation() != taxi.oStation()) taxi.sendTo(taxi.oStation());
+
+			retire(taxi, vehicle);
+			window(taxi.oStation()).parked.add(new Parked(vehicle, taxi.timeAvailable()));
+		}
+	}
+
+	/* Retire a finished itinerary, driven by the given vehicle (-1 if it is not part of the fleet) */
+	private void retire(Taxi taxi, int vehicle) {
+		itineraries++;
+		tripNodes += taxi.totalTripNodes();
+		emptyMiles += taxi.emptyMiles();
+
+		if (out != null) {
+			out.println(((vehicle < 0) ? "NA" : String.valueOf(vehicle + 1)) + "\t" + taxi.dTime() + "\t" + taxi.timeAvailable()
+				+ "\t" + taxi.numTrips() + "\t" + taxi.totalTripNodes() + "\t" + taxi.emptyMiles()
+				+ "\t" + ((taxi.oStation() == null) ? "NA" : taxi.oStation().toString())
+				+ "\t" + ((taxi.cStation() == null) ? "NA" : taxi.cStation().toString()));
+		}
+	}
+
+	/* Returns the open taxis at the given station */
+	private StationWindow window(Station station) {
+		StationWindow window = windows.get(station);
+		if (window == null) {
+			window = new StationWindow();
+			windows.put(station, window);
+		}
+		return window;
+	}
+
+	/* Removes the given taxi itself (not a taxi that compares equal to it) from the list */
+	private static void remove(List<Taxi> taxis, Taxi taxi) {
+		for (int i = 0; i < taxis.size(); i++) {
+			if (taxis.get(i) == taxi) {
+				taxis.remove(i);
+				return;
+			}
+		}
+	}
+
+	/* Open taxis at a station */
+	private static class StationWindow {
+		private List<Taxi> departures = new ArrayList<Taxi>(); // departures that can still be shared
+		private List<Taxi> arrivals = new ArrayList<Taxi>(); // taxis waiting for another departure
+		private PriorityQueue<Parked> parked = new PriorityQueue<Parked>(); // vehicles that returned to the station
+	}
+
+	/* A vehicle that returned to its origin station, and the time it got there */
+	private static class Parked implements Comparable<Parked> {
+		private int vehicle;
+		private double time;
+
+		private Parked(int vehicle, double time) {
+			this.vehicle = vehicle;
+			this.time = time;
+		}
+
+		public int compareTo(Parked that) {
+			return Double.compare(time, that.time);
+		}
+	}
+
+	/* Comparator used to sort taxis by the time they become available */
+	private static class AvailabilityComparator implements Comparator<Taxi> {
+		public int compare(Taxi t1, Taxi t2) {
+			return Double.compare(t1.timeAvailable(), t2.timeAvailable());
+		}
+	}
+}
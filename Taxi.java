@@ -5,28 +5,35 @@
 
 import java.util.*;
 import java.io.*;
+import java.util.concurrent.atomic.*;
 
 public class Taxi implements Comparable<Taxi> {
+	private static final Trip[] NO_TRIPS = new Trip[0];
+	private static final AtomicLong ids = new AtomicLong(); // next id to give a taxi
+
+	private long id = -1; // unique id of the taxi, the last tiebreaker of compareTo (-1 until it is given one, see id())
+
 	private int trips; // # of trips this taxi makes in a day
-	private TripNode first; // first trip of the day
-	private TripNode last; // last trip of the day
+	private Trip[] itinerary; // trips of the day, in order
+	private int nodes; // total # of trip nodes covered by the itinerary
+	private double miles; // total miles of the trips in the itinerary
 	private Station oStation; // origin station for this taxi
 	private Station cStation; // current station at which taxi is located
-	private Double dTime; // depart time of the first trip of the taxi
-	private Double timeAvailable; // time taxi is available after dropping off last passenger
+	private double dTime; // depart time of the first trip of the taxi
+	private double timeAvailable; // time taxi is available after dropping off last passenger
+	private double originDistance; // distance from oStation to the destination of the current trip (0 if either is missing)
+	private double currentDistance; // distance from cStation to the origin of the first trip (0 if either is missing)
 
 	private double emptyMiles; // empty miles burden this taxi endures
-
-	private class TripNode {
-		private Trip trip; // destination pixel of node
-		private TripNode next; // link to the node that comes next
-	}
+	int departureNodes; // # of nodes the taxi was counted with in its oStation's ledger (see StationLedger)
+	int arrivalNodes; // # of nodes the taxi was counted with in its cStation's ledger
 
 	/* Initialize an empty taxi */
 	public Taxi() {
 		trips = 0;
-		first = null;
-		last = null;
+		itinerary = NO_TRIPS;
+		nodes = 0;
+		miles = 0;
 		oStation = null;
 		cStation = null;
 		dTime = Double.POSITIVE_INFINITY;
@@ -37,12 +44,9 @@ public class Taxi implements Comparable<Taxi> {
 	/* Initialize a taxi with one trip */
 	public Taxi(Trip trip, String countyname, List<Station> stations) {
 		trips = 1;
-		TripNode newTrip = new TripNode();
-		newTrip.trip = trip;
-		newTrip.next = null;
-
-		first = newTrip;
-		last = newTrip;
+		itinerary = new Trip[] {trip};
+		nodes = trip.nodes();
+		miles = trip.vehMiles();
 
 		oStation = null;
 		cStation = null;
@@ -50,7 +54,67 @@ public class Taxi implements Comparable<Taxi> {
 		dTime = trip.dTime();
 		timeAvailable = trip.aTime();
 		emptyMiles = 0;
+		updateDistances();
+
+	}
+
+	/* 	Initialize a taxi saved with write(). Station numbers are positions in the given list,
+		and the taxi's trips are added to the given trip table */
+	public Taxi(DataInputStream in, List<Station> stations, TripTable table) throws IOException {
+		int o = in.readInt();
+		int c = in.readInt();
+		oStation = (o < 0) ? null : stations.get(o);
+		cStation = (c < 0) ? null : stations.get(c);
+		dTime = in.readDouble();
+		timeAvailable = in.readDouble();
+		emptyMiles = in.readDouble();
+
+		trips = in.readInt();
+		itinerary = new Trip[in.readInt()];
+		for (int i = 0; i < itinerary.length; i++)
+			itinerary[i] = table.read(in);
+		count();
+		updateDistances();
+	}
+
+	/* 	Save this taxi, so it can be recreated later with Taxi(DataInputStream, List<Station>, TripTable).
+		Stations are saved as their number in the given map (-1 if there is no station) */
+	public void write(DataOutputStream out, Map<Station, Integer> stationNumbers) throws IOException {
+		out.writeInt((oStation == null) ? -1 : stationNumbers.get(oStation));
+		out.writeInt((cStation == null) ? -1 : stationNumbers.get(cStation));
+		out.writeDouble(dTime);
+		out.writeDouble(timeAvailable);
+		out.writeDouble(emptyMiles);
+
+		out.writeInt(trips);
+		out.writeInt(itinerary.length);
+		for (Trip trip : itinerary)
+			trip.write(out);
+	}
+
+	/* Work out the total nodes and miles of the itinerary again */
+	private void count() {
+		nodes = 0;
+		miles = 0;
+		for (Trip trip : itinerary) {
+			nodes += trip.nodes();
+			miles += trip.vehMiles();
+		}
+	}
+
+	/* 	Work out the distances compareTo orders taxis by again. Should be called whenever the
+		stations or trips of the taxi change */
+	private void updateDistances() {
+		boolean empty = (itinerary.length == 0);
+		originDistance = (oStation == null || empty) ? 0 : oStation.distanceTo(currentTrip().currentPixel());
+		currentDistance = (cStation == null || empty) ? 0 : cStation.distanceTo(firstTrip().oPixel());
+	}
 
+	/* Returns the trips of the first itinerary, followed by the trips of the second */
+	private static Trip[] concat(Trip[] first, Trip[] second) {
+		Trip[] itinerary = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, itinerary, first.length, second.length);
+		return itinerary;
 	}
 
 	/* Update taxi everywhere both at departing station and arriving station */
@@ -59,9 +123,8 @@ public class Taxi implements Comparable<Taxi> {
 
 		// add departure from oStation if intracounty
 		if (oStation != null) {
-			Station station = stations.get(stations.indexOf(oStation));
+			Station station = StationRegistry.lookup(oStation, stations);
 			success = station.addDeparture(this);
-			stations.set(stations.indexOf(station), station);
 		}
 
 		if (!success) {
@@ -71,9 +134,8 @@ public class Taxi implements Comparable<Taxi> {
 
 		// add arrival to cStation if intracounty
 		if (cStation != null) {
-			Station station = stations.get(stations.indexOf(cStation));
+			Station station = StationRegistry.lookup(cStation, stations);
 			success = station.addArrival(this);
-			stations.set(stations.indexOf(station), station);
 		}
 
 		if (!success) {
@@ -90,9 +152,8 @@ public class Taxi implements Comparable<Taxi> {
 
 		// remove departure from oStation if intracounty
 		if (oStation != null) {
-			Station station = stations.get(stations.indexOf(oStation));
+			Station station = StationRegistry.lookup(oStation, stations);
 			success = station.removeDeparture(this);
-			stations.set(stations.indexOf(station), station);
 		}
 
 		if (!success) {
@@ -102,9 +163,8 @@ public class Taxi implements Comparable<Taxi> {
 
 		// remove arrival to cStation if intracounty
 		if (cStation != null) {
-			Station station = stations.get(stations.indexOf(cStation));
+			Station station = StationRegistry.lookup(cStation, stations);
 			success = station.removeArrival(this);
-			stations.set(stations.indexOf(station), station);
 			if (!success) 
 				System.out.println("remove arrival failure");
 		}
@@ -122,44 +182,31 @@ public class Taxi implements Comparable<Taxi> {
 		trips += that.trips; // update total # of trips
 		emptyMiles += that.emptyMiles; // update total # of empty miles
 
-		int totalNodes = totalTripNodes() + that.totalTripNodes();
-
 		// if other taxi comes before this one
 		if (that.timeAvailable <= dTime) {
+			boolean empty = (itinerary.length == 0);
 			
 			// update dTime
 			dTime = that.dTime;
 
 			// add taxi's trips to the beginning of this taxi's list of trips
-			that.last.next = first;
-			first = that.first;
-
-			int count = 0;
-			int nodes = 0;
-			TripNode index = first;
-			while (index != null) {
-				count++;
-				nodes += index.trip.nodes();
-				index = index.next;
-			}
+			itinerary = concat(that.itinerary, itinerary);
+			nodes += that.nodes;
+			miles += that.miles;
 
-			if (trips != count) 
+			if (trips != itinerary.length) 
 				System.out.println("something wrong with adding trips in addTrips - 1");
-			if (nodes != totalTripNodes()) 
-				System.out.println("something wrong with nodes in addTrips - 1");
-			if (nodes != totalNodes) 
-				System.out.println("something wrong with adding nodes in addTrips - 1");
 
 			// update oStation
 			oStation = that.oStation;
 
 			// if this is the first trip being added
-			if (last == null) {
-				last = that.last;
+			if (empty) {
 				timeAvailable = that.timeAvailable;
 				cStation = that.cStation;
 			}
 
+			updateDistances();
 			return true;
 		}
 
@@ -170,31 +217,17 @@ public class Taxi implements Comparable<Taxi> {
 			timeAvailable = that.timeAvailable;
 
 			// add taxi's trips to the end of this taxi's trips
-			if (last != null) {
-				last.next = that.first;
-			}
-			last = that.last;
-			
+			itinerary = concat(itinerary, that.itinerary);
+			nodes += that.nodes;
+			miles += that.miles;
 
-			int count = 0;
-			int nodes = 0;
-			TripNode index = first;
-			while (index != null) {
-				count++;
-				nodes += index.trip.nodes();
-				index = index.next;
-			}
-
-			if (trips != count) 
+			if (trips != itinerary.length) 
 				System.out.println("something wrong with adding trips in addTrips - 2");
-			if (nodes != totalTripNodes()) 
-				System.out.println("something wrong with nodes in addTrips - 2");
-			if (nodes != totalNodes) 
-				System.out.println("something wrong with adding nodes in addTrips - 2");
 
 			// update cStation
 			cStation = that.cStation;
 
+			updateDistances();
 			return true;
 		}
 		System.out.println("add trips failure");
@@ -221,26 +254,10 @@ public class Taxi implements Comparable<Taxi> {
 
 	/* Returns the total number of trip nodes covered by this taxi */
 	public int totalTripNodes() {
-		int nodes = 0;
-		TripNode curr = first;
-		// System.out.println("in total trip nodes");
-		while (curr != null) {
-			nodes += curr.trip.nodes();
-			curr = curr.next;
-		}
 		return nodes;
 	}
 
 	public double totalTripMiles() {
-		double miles = 0;
-
-		TripNode curr = first;
-
-		while (curr != null) {
-			miles += curr.trip.vehMiles();
-			curr = curr.next;
-		}
-
 		return miles;
 	}
 
@@ -255,7 +272,7 @@ public class Taxi implements Comparable<Taxi> {
 		return dTime;
 	}
 
-	public Double timeAvailable() {
+	public double timeAvailable() {
 		return timeAvailable;
 	}
 
@@ -268,11 +285,11 @@ public class Taxi implements Comparable<Taxi> {
 	}
 
 	public Trip currentTrip() {
-		return last.trip;
+		return itinerary[itinerary.length - 1];
 	}
 
 	public Trip firstTrip() {
-		return first.trip;
+		return itinerary[0];
 	}
 
 	/* Helper function for the first round of optimization.
@@ -287,13 +304,21 @@ public class Taxi implements Comparable<Taxi> {
 		if (((Math.abs(dTime - that.dTime) + currentTrip().delay()) > 300) || ((Math.abs(dTime - that.dTime)+that.currentTrip().delay()) > 300)) return false;
 
 		// check that time to pick up passengers from both trips is <= difference in departTImes
-		if ((new Station(currentTrip().oPixel(), true).distanceTo(new Station(that.currentTrip().oPixel(), true))* 3600 / 30) > Math.abs(dTime - that.dTime)) 
+		if (Pixel.travelTime(currentTrip().oPixel(), that.currentTrip().oPixel()) > Math.abs(dTime - that.dTime)) 
 			return false;
 
 		// check that the total riders <= 6
 		if ((currentTrip().totalRiders() + that.currentTrip().totalRiders()) > 6) return false;
 
-		return currentTrip().combineNodes(that.currentTrip());
+		// rule out trips that are too far out of the way before working out the full circuity
+		if (!currentTrip().mayCombine(that.currentTrip())) return false;
+
+		if (!currentTrip().combineNodes(that.currentTrip())) return false;
+
+		// the current trip now covers the other trip's nodes and miles as well
+		count();
+		updateDistances();
+		return true;
 	}
 
 	public boolean equals(Object obj) {
@@ -304,97 +329,63 @@ public class Taxi implements Comparable<Taxi> {
 		return (compareTo(that) == 0);
 	}
 
-	private int compareTrips(Taxi that) {
-		int BEFORE = -1;
-		int EQUAL = 0;
-		int AFTER = 1;
-
-		if (trips > that.trips) return AFTER;
-		if (trips < that.trips) return BEFORE;
+	/* 	sets Taxi's natural ordering to be based on increasing dTime, followed by increasing time available.
+		Taxis that leave and become available at the same time are ordered by their origin station and the distance
+		from it, then by their current station and the distance to it, and last by their ids. The keys are always
+		compared in the same order, so this is a total order and only a taxi is equal to itself */
+	@Override public int compareTo(Taxi that) {
+		if (this == that) return 0;
 
-		if (first != null && that.first != null) {
-			TripNode curr = first;
-			TripNode tCurr = that.first;
+		int order = Double.compare(dTime, that.dTime);
+		if (order != 0) return order;
 
-			while (curr != null && tCurr != null) {
-				if (!curr.trip.equals(tCurr.trip)) {
-					Trip trip = curr.trip;
-					Trip tTrip = tCurr.trip;
+		order = Double.compare(timeAvailable, that.timeAvailable);
+		if (order != 0) return order;
 
-					if (trip.nodes().compareTo(tTrip.nodes()) != 0) return trip.nodes().compareTo(tTrip.nodes());
-					if (trip.dTime().compareTo(tTrip.dTime()) != 0) return trip.dTime().compareTo(tTrip.dTime());
-					if (trip.aTime().compareTo(tTrip.aTime()) != 0) return trip.aTime().compareTo(tTrip.aTime());
-					if (trip.vehMiles().compareTo(tTrip.vehMiles()) == 0) return trip.vehMiles().compareTo(tTrip.vehMiles());
-					if (((Integer)trip.totalRiders()).compareTo(tTrip.totalRiders()) != 0) 
-						return ((Integer)trip.totalRiders()).compareTo(tTrip.totalRiders());
+		// then by origin station, and the distance from it
+		order = Integer.compare(stationKey(oStation), stationKey(that.oStation));
+		if (order != 0) return order;
 
-					// IF NECESSARY WE CAN CHECK EACH INDIVID NODE OF TRIP
-					// COMPARE PIXEL DISTANCE AND NUM RIDERS
-				}
+		order = Double.compare(originDistance, that.originDistance);
+		if (order != 0) return order;
 
-				curr = curr.next;
-				tCurr = tCurr.next;
-			}
+		// then by current station, and the distance to it
+		order = Integer.compare(stationKey(cStation), stationKey(that.cStation));
+		if (order != 0) return order;
 
-		}
-
-		// if both sets of trips are emtpy or if all the trips are the same
-		return EQUAL;
+		order = Double.compare(currentDistance, that.currentDistance);
+		if (order != 0) return order;
 
+		return Long.compare(id(), that.id());
 	}
 
-	/* sets Taxi's natural ordering to be based on increasing dTime, followed by increasing time available */
-	@Override public int compareTo(Taxi that) {
-		final int BEFORE = -1;
-    	final int EQUAL = 0;
-    	final int AFTER = 1;
-
-		// if (this.equals(that)) return EQUAL;
-		if (dTime.compareTo(that.dTime) == 0) {
-			if (timeAvailable.compareTo(that.timeAvailable) == 0) {
-				
-				// if both are departing from the same station and everything else is the same
-				if (oStation != null && that.oStation != null && oStation.equals(that.oStation)) {
-
-					// if they happen to be traveling the same distance, make sure they are not the same taxi
-					if (((Double)oStation.distanceTo(last.trip.currentPixel())).compareTo(oStation.distanceTo(that.last.trip.currentPixel())) == 0) {
-						return compareTrips(that);
-					}
-					else return ((Double)oStation.distanceTo(last.trip.currentPixel())).compareTo(oStation.distanceTo(that.last.trip.currentPixel()));
-				}
-
-				// if both are arriving to the same station and everything else is the same, sort by distance
-				if (cStation != null && that.cStation != null && cStation.equals(that.cStation)) {
-
-					// if they happen to be traveling the same distance, make sure they are not the same taxi
-					if (((Double)cStation.distanceTo(first.trip.oPixel())).compareTo(cStation.distanceTo(first.trip.oPixel())) == 0) {
-						return compareTrips(that);
-					}
-					return ((Double)cStation.distanceTo(first.trip.oPixel())).compareTo(cStation.distanceTo(that.first.trip.oPixel()));
-				}
-
-			}
-			else return timeAvailable.compareTo(that.timeAvailable);				
-		}
-		else return dTime.compareTo(that.dTime);
+	/* Returns the key stations are ordered by in compareTo: the station's id, with no station (intercounty) first */
+	private static int stationKey(Station station) {
+		return (station == null) ? -1 : station.id;
+	}
 
-		return EQUAL;
-		
+	/* 	Returns the taxi's id, giving it the next one if it doesn't have one yet.
+		Ids are given out the first time a taxi needs one to be ordered, which only happens on the thread
+		running the optimization, so they come out the same even if the taxis were read on several threads */
+	private long id() {
+		if (id < 0) id = ids.getAndIncrement();
+		return id;
 	}
 
 	/* creates a compareTo method to compare arrival taxis - puts preference on arrival time instead of departure time */
 	public int compareByArrivals(Taxi that) {
 
-		if (timeAvailable.compareTo(that.timeAvailable) == 0) {
+		if (Double.compare(timeAvailable, that.timeAvailable) == 0) {
 			return compareTo(that);			
 		}
-		else return timeAvailable.compareTo(that.timeAvailable);
+		else return Double.compare(timeAvailable, that.timeAvailable);
 
 	}
 
 	/* set the taxi's base station */
 	public void setBase(Station station) {
 		oStation = station;
+		updateDistances();
 	}
 
 	/* Send the taxi, empty, to given station */
@@ -403,17 +394,18 @@ public class Taxi implements Comparable<Taxi> {
 		cStation = station;
 
 		// update empty vehicle miles
-		if (last == null) System.out.println("last is null");
-		else if (last.trip == null) System.out.println("trip is null");
+		if (itinerary.length == 0) System.out.println("last is null");
 
-		emptyMiles += station.distanceTo(last.trip.currentPixel());
+		emptyMiles += station.distanceTo(currentTrip().currentPixel());
 
 		// update timeAvailable
-		timeAvailable += (station.distanceTo(last.trip.currentPixel()) * 3600 / 30);
+		timeAvailable += station.travelTimeTo(currentTrip().currentPixel());
+		updateDistances();
 	}
 
 	/* set the taxi's current station */
 	public void setCurrent(Station station) {
 		cStation = station;
+		updateDistances();
 	}
 }
\ No newline at end of file
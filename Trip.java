@@ -1,236 +1,249 @@
 /* Trip data structure 
-   Saves all the trip info provided in the trip files for a trip
+   Saves all the trip info provided in the trip files for a trip.
+   A trip is a view of a row of a trip table (see TripTable), where its info is saved. When a trip is changed,
+   the changed trip is added to the table as a new row, and the trip becomes a view of that row instead
 */
 
 import java.util.*;
+import java.io.*;
 
 public class Trip {
-    private int nodes; // total # of nodes in the trip
-    private Node first; // first node on trip
-    private Node last; // last node on trip
-    private String dCounty; // origin county of trip
-    private String aCounty;  // arrival county of trip
-    private String oPixel; // origin pixel of trip
-    private double dTime; // departure time
-    private double aTime; // arrival time
-    private double vehMiles; // total miles of the trip
-    private double delay; // # of seconds original departure is currently delayed
-    
-
-    private class Node {
-        private String pixel; // destination pixel of node
-        private int riders; // # of riders on this leg of trip
-        private Node next; // link to the node that comes next
+    private static final double SLACK = 1e-6; // miles allowed for rounding when ruling out combined trips early (see mayCombine)
+
+    private TripTable table; // table the trip is saved in
+    private int row; // row of the table with the trip's info
+
+    /* Create a view of the given row of a trip table */
+    Trip(TripTable table, int row) {
+        this.table = table;
+        this.row = row;
     }
 
-    /* Create a trip from the line of trip data in the trip file */
+    /* Create a trip from the line of trip data in the trip file, in a table of its own sized for just this trip */
     public Trip(String line) {
-        first = null;
-        last = null;
-        delay = 0;
-
-        String [] info = line.split(","); // split the line of data
-
-        /* save the trip info */
-        nodes = Integer.parseInt(info[4]);
-        for (int i = 0, x = 0; i < nodes; i++, x+=4) {
-            Node node = new Node();
-            node.pixel = info[6+x] + ", " + info[7+x];
-            node.riders = Integer.parseInt(info[8+x]);
-
-            if (isEmpty()) {
-                first = node;
-                last = node;
-            }
-            else {
-                last.next = node;
-                last = node;
-            }
+        Trip trip = new TripTable(1).add(line);
+        table = trip.table;
+        row = trip.row;
+    }
+
+    /* Save this trip, so it can be recreated later with TripTable.read() */
+    public void write(DataOutputStream out) throws IOException {
+        int N = table.nodeCount(row);
+
+        out.writeInt(N);
+        for (int i = 0; i < N; i++) {
+            out.writeInt(table.pixel(row, i));
+            out.writeInt(table.riders(row, i));
         }
-        dCounty = info[0].split("-")[0];
-        aCounty = info[21].split("-")[0];
-        oPixel = info[1] + ", " + info[2];
-        dTime = Double.parseDouble(info[3]);
-        aTime = Double.parseDouble(info[24]);
-        vehMiles = Double.parseDouble(info[18]);
+        out.writeInt(table.nodes(row));
+        out.writeUTF(table.dCounty(row));
+        out.writeUTF(table.aCounty(row));
+        out.writeInt(table.oPixel(row));
+        out.writeDouble(table.dTime(row));
+        out.writeDouble(table.aTime(row));
+        out.writeDouble(table.vehMiles(row));
+        out.writeDouble(table.delay(row));
     }
 
     /* Return the total number of riders across all nodes of this trip */
     public int totalRiders() {
         int riders = 0;
-        Node curr = first;
-
-        while (curr != null) {
-            riders += curr.riders;
-            curr = curr.next;
-        }
+        for (int i = 0; i < table.nodeCount(row); i++)
+            riders += table.riders(row, i);
 
         return riders;
     }
 
     public boolean isEmpty() {
-        return first == null;
+        return table.nodeCount(row) == 0;
     }
 
     public String dCounty() {
-        return dCounty;
+        return table.dCounty(row);
     }
 
     public double delay() {
-        return delay;
+        return table.delay(row);
     }
 
     public String aCounty() {
-        return aCounty;
+        return table.aCounty(row);
     }
 
     public Double dTime() {
-        return dTime;
+        return table.dTime(row);
     }
 
     public Double aTime() {
-        return aTime;
+        return table.aTime(row);
     }
 
-    public String currentPixel() {
-        return last.pixel;
+    public int currentPixel() {
+        return table.pixel(row, table.nodeCount(row) - 1);
     }
 
-    public String oPixel() {
-        return oPixel;
+    public int oPixel() {
+        return table.oPixel(row);
     }
 
     public Double vehMiles() {
-        return vehMiles;
+        return table.vehMiles(row);
     }
 
     public Integer nodes() {
-        return nodes;
+        return table.nodes(row);
+    }
+
+    /*  Quick check before combineNodes: returns false if combining with the other trip can't be within the max circuity.
+        The combined route goes from the origin of the trip that departs first, to the origin of the other trip, through
+        the rest of the first trip's nodes, then through the rest of the other trip's nodes. Going straight to the last node
+        of a trip is never longer than going through its nodes, so the straight line distances give the shortest
+        the route could be. Trips that pass may still be over the max circuity, but trips that fail always are */
+    public boolean mayCombine(Trip that) {
+        if (table.dTime(row) <= that.table.dTime(that.row)) return mayCombine(this, that);
+        return mayCombine(that, this);
+    }
+
+    private static boolean mayCombine(Trip host, Trip other) {
+        int pickup = other.firstPixel();
+        int hostEnd = (host.table.nodeCount(host.row) == 1) ? pickup : host.currentPixel();
+        int otherEnd = (other.table.nodeCount(other.row) == 1) ? hostEnd : other.currentPixel();
+
+        // shortest the first trip could be: to the pickup, then to its last node
+        double toHostEnd = Pixel.distance(pickup, hostEnd);
+        if (Pixel.distance(host.firstPixel(), pickup) + toHostEnd > 1.2 * host.table.vehMiles(host.row) + SLACK) return false;
+
+        // shortest the other trip could be: from its origin to the first trip's last node, then to its own
+        if (toHostEnd + Pixel.distance(hostEnd, otherEnd) > 1.2 * other.table.vehMiles(other.row) + SLACK) return false;
+
+        return true;
+    }
+
+    /* Returns the pixel of the first node of this trip */
+    private int firstPixel() {
+        return table.pixel(row, 0);
     }
 
     /* Attempt to combine nodes of another trip, if within max circuity */
     public boolean combineNodes(Trip that) {
+        int N = table.nodeCount(row);
+        int M = that.table.nodeCount(that.row);
+        double dTime = table.dTime(row);
+        double thatDTime = that.table.dTime(that.row);
+
         // initialize miles with distance between two pixels
-        double newMiles = new Station(first.pixel, true).distanceTo(new Station(that.first.pixel, true)); 
+        double newMiles = Pixel.distance(firstPixel(), that.firstPixel()); 
 
         // check max circuity
-        if (dTime <= that.dTime) {
+        if (dTime <= thatDTime) {
             // add distance to all the nodes in this trip
-            Node previous = that.first;
-            Node current = first.next;
-
-            while (current != null) {
-                newMiles += new Station(previous.pixel, true).distanceTo(new Station(current.pixel, true));
+            int previous = that.firstPixel();
+            for (int i = 1; i < N; i++) {
+                int current = table.pixel(row, i);
+                newMiles += Pixel.distance(previous, current);
                 previous = current;
-                current = current.next;
             }
 
-            if ((newMiles / vehMiles) > 1.2) return false; // check the max circuity for this trip
+            if ((newMiles / table.vehMiles(row)) > 1.2) return false; // check the max circuity for this trip
 
             // add distance to all the nodes in this trip
-            current = that.first.next;
-            while (current != null) {
-                newMiles += new Station(previous.pixel, true).distanceTo(new Station(current.pixel, true));
+            for (int i = 1; i < M; i++) {
+                int current = that.table.pixel(that.row, i);
+                newMiles += Pixel.distance(previous, current);
                 previous = current;
-                current = current.next;             
             }
 
             // check the max circuity for the other trip
-            if (((newMiles - new Station(first.pixel, true).distanceTo(new Station(that.first.pixel, true))) / that.vehMiles) > 1.2) 
+            if (((newMiles - Pixel.distance(firstPixel(), that.firstPixel())) / that.table.vehMiles(that.row)) > 1.2) 
                 return false; 
 
-            // update anything specific to that trip being before this 
-            aCounty = that.aCounty;
-
-            Node beg = new Node();
-            beg.pixel = that.oPixel;
-            beg.riders = 0;
-            beg.next = first;
-            last.next = that.first;
-            last = that.last;
-
+            // save the combined trip: this trip's nodes, followed by the other trip's nodes
+            int combined = table.newRow();
+            table.addNodes(table, row);
+            table.addNodes(that.table, that.row);
+            update(combined, table.dCounty(row), that.table.aCounty(that.row), table.oPixel(row), dTime, newMiles, that);
         }
 
-        if (dTime > that.dTime) {
+        else {
             // add distance to all the nodes in this trip
-            Node previous = first;
-            Node current = that.first.next;
-
-            while (current != null) {
-                newMiles += new Station(previous.pixel, true).distanceTo(new Station(current.pixel, true));
+            int previous = firstPixel();
+            for (int i = 1; i < M; i++) {
+                int current = that.table.pixel(that.row, i);
+                newMiles += Pixel.distance(previous, current);
                 previous = current;
-                current = current.next;
             }
 
-            if ((newMiles / that.vehMiles) > 1.2) return false; // check the max circuity for this trip
+            if ((newMiles / that.table.vehMiles(that.row)) > 1.2) return false; // check the max circuity for this trip
 
             // add distance to all the nodes in this trip
-            current = first.next;
-            while (current != null) {
-                newMiles += new Station(previous.pixel, true).distanceTo(new Station(current.pixel, true));
+            for (int i = 1; i < N; i++) {
+                int current = table.pixel(row, i);
+                newMiles += Pixel.distance(previous, current);
                 previous = current;
-                current = current.next;             
             }
 
             // check the max circuity for the other trip
-            if (((newMiles - new Station(first.pixel, true).distanceTo(new Station(that.first.pixel, true))) / vehMiles) > 1.2) 
+            if (((newMiles - Pixel.distance(firstPixel(), that.firstPixel())) / table.vehMiles(row)) > 1.2) 
                 return false; 
 
-            Node beg = new Node();
-            beg.pixel = oPixel;
-            beg.riders = 0;
-            beg.next = that.first;
-            that.last.next = first;
-            first = beg;
-
-            dTime = that.dTime;
-            oPixel = that.oPixel;
-
+            // save the combined trip: this trip's origin, the other trip's nodes, then this trip's nodes
+            int combined = table.newRow();
+            table.addNode(table.oPixel(row), 0);
+            table.addNodes(that.table, that.row);
+            table.addNodes(table, row);
+            update(combined, table.dCounty(row), table.aCounty(row), that.table.oPixel(that.row), thatDTime, newMiles, that);
         }
-        // update trip appropriately
-        vehMiles = newMiles;
-        aTime = dTime + (vehMiles *3600/30);
-        nodes += that.nodes;
-        delay += Math.abs(dTime - that.dTime);
 
         return true;
     }
 
+    /*  Finish the combined row with the given info, the other trip's nodes and delay, and move this trip to it */
+    private void update(int combined, String dCounty, String aCounty, int oPixel, double dTime, double newMiles, Trip that) {
+        // update trip appropriately (the delay is from the combined trip's departure time)
+        double delay = table.delay(row) + Math.abs(dTime - that.table.dTime(that.row));
+        table.set(combined, dCounty, aCounty, oPixel, dTime, dTime + (newMiles *3600/30), newMiles, delay,
+            table.nodes(row) + that.table.nodes(that.row));
+        row = combined;
+    }
+
     public boolean addNode(Trip trip) {
-        if ((nodes + trip.nodes) > 3) return false; // if already have max number of nodes, do not combine
+        int nodes = table.nodes(row);
+        double dTime = table.dTime(row);
+        double tripDTime = trip.table.dTime(trip.row);
+
+        if ((nodes + trip.table.nodes(trip.row)) > 3) return false; // if already have max number of nodes, do not combine
         
         // do not delay departure for more than 5 min
-        if ((delay + Math.abs(trip.dTime - dTime)) > 300) return false; 
+        if ((table.delay(row) + Math.abs(tripDTime - dTime)) > 300) return false; 
+
+        int combined = table.newRow();
+        String aCounty = table.aCounty(row);
 
-        if (trip.dTime >= dTime) {
+        if (tripDTime >= dTime) {
             // add to the end of the node list
-            last.next = trip.first;
-            last = trip.last;
+            table.addNodes(table, row);
+            table.addNodes(trip.table, trip.row);
 
             // update arrival county
-            aCounty = trip.aCounty;
+            aCounty = trip.table.aCounty(trip.row);
 
             // update dTime
-            dTime = trip.dTime;
+            dTime = tripDTime;
 
         }
         else {
             // add to the beginning of node list
-            trip.last.next = first;
-            first = trip.first;
+            table.addNodes(trip.table, trip.row);
+            table.addNodes(table, row);
         }
 
-        // update nodes
-        nodes += trip.nodes;
-
         // update vehicle miles
-        vehMiles += trip.vehMiles;
-
-        // update arrival time
-        aTime = vehMiles * 3600 / 30;
+        double vehMiles = table.vehMiles(row) + trip.table.vehMiles(trip.row);
 
-        // delay departure
-        delay += Math.abs(trip.dTime - dTime);
+        // update arrival time, and delay departure
+        table.set(combined, table.dCounty(row), aCounty, table.oPixel(row), dTime, vehMiles * 3600 / 30, vehMiles,
+            table.delay(row) + Math.abs(tripDTime - dTime), nodes + trip.table.nodes(trip.row));
+        row = combined;
 
         return true;
     }
@@ -241,30 +254,20 @@ public class Trip {
         Trip that = (Trip) obj;
 
         // check to make sure all nodes are the same
-        if (nodes != that.nodes) return false;
-        
-        if (first != null && that.first != null) {
-            Node curr = first;
-            Node tCurr = that.first;
-
-            while (curr != null && tCurr != null) {
-                if (!curr.pixel.equals(tCurr.pixel)) return false;
-                if (curr.riders != tCurr.riders) return false;
-
-                curr = curr.next;
-                tCurr = tCurr.next;
-            }
+        if (table.nodes(row) != that.table.nodes(that.row)) return false;
 
+        int N = Math.min(table.nodeCount(row), that.table.nodeCount(that.row));
+        if (N == 0) return false; // NOTE: every created trip has a first node
+        for (int i = 0; i < N; i++) {
+            if (table.pixel(row, i) != that.table.pixel(that.row, i)) return false;
+            if (table.riders(row, i) != that.table.riders(that.row, i)) return false;
         }
-        
-        //NOTE: no way for both to be null because every created trip has a first value
-        else return false; 
 
         // check the rest of the parameters
-        if (!dCounty.equals(that.dCounty) || !aCounty.equals(that.aCounty) || !oPixel.equals(that.oPixel)) 
+        if (!dCounty().equals(that.dCounty()) || !aCounty().equals(that.aCounty()) || oPixel() != that.oPixel()) 
             return false;
-        if (dTime != that.dTime || aTime != that.aTime) return false;
-        if (vehMiles != that.vehMiles) return false;
+        if (table.dTime(row) != that.table.dTime(that.row) || table.aTime(row) != that.table.aTime(that.row)) return false;
+        if (table.vehMiles(row) != that.table.vehMiles(that.row)) return false;
 
         return true;
 
@@ -272,39 +275,11 @@ public class Trip {
 
     /*  Function that finds the closest station in the list of stations to the destination pixel */
     public Station findClosestCurrentStation(List<Station> stations) {
-        Station closest = null;
-        double minDist = Double.POSITIVE_INFINITY;
-        // go through each of the available stations
-        for (Station station : stations) {
-            // find the distance between this pixel and the station
-            double dist = station.distanceTo(last.pixel);
-            
-            // if distance is the closest dist thus far, save station
-            if (dist < minDist) {
-                minDist = dist;
-                closest = station;
-            }
-        }
-
-        return closest;
+        return StationIndex.of(stations).nearest(currentPixel());
     }
 
     /*  Function that finds the closest station in the list of stations to the origin pixel */
     public Station findClosestOriginStation(List<Station> stations) {
-        Station closest = null;
-        double minDist = Double.POSITIVE_INFINITY;
-        // go through each of the available stations
-        for (Station station : stations) {
-            // find the distance between this pixel and the station
-            double dist = station.distanceTo(oPixel);
-            
-            // if distance is the closest dist thus far, save station
-            if (dist < minDist) {
-                minDist = dist;
-                closest = station;
-            }
-        }
-
-        return closest;
+        return StationIndex.of(stations).nearest(oPixel());
     }
 }
@@ -0,0 +1,13 @@
+/* Trip aggregator
+   Statistic that is built up one trip at a time while a trip file is scanned.
+   Any number of aggregators can be filled by the same pass over a file (see CountyStatistics)
+*/
+
+public interface TripAggregator {
+
+	/* Add the current trip of the reader to the statistic */
+	void add(TripReader trip);
+
+	/* Print the statistic */
+	void print();
+}
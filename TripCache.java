@@ -0,0 +1,369 @@
+/* Binary trip cache
+   One-time converter that saves the trips of a trip file in a compact binary file, one column
+   after another, and a reader that memory-maps that file so trips can be read without any
+   text parsing.
+
+   Cache layout (all big-endian):
+     header:  magic, version, # of trips, # of counties, then each county name (length + bytes)
+     columns: dCounty, aCounty (short county codes), oX, oY (short pixels), dTime, aTime,
+              vehMiles, avo (doubles), nodes (byte), totalRiders (short),
+              then destX, destY (short pixels) and riders (short) for each of the 3 node slots
+*/
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+public class TripCache {
+	private static final int MAGIC = 0x54524950; // "TRIP"
+	private static final int VERSION = 1;
+	private static final int MAX_NODES = 3; // node slots saved for every trip
+
+	/* 	Program that converts the given trip files into their binary caches.
+		Arguments should be the trip files (e.g. Departures/nor.csv Arrivals/Anor.csv) */
+	public static void main(String[] args) {
+		if (args.length == 0) {
+			System.out.println("Must have at least one argument: [trip file] ...");
+			return;
+		}
+
+		for (String filename : args) {
+			try {
+				int trips = write(filename, cacheName(filename));
+				System.out.println(filename + " -> " + cacheName(filename) + " (" + trips + " trips)");
+			}
+			catch(Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/* Returns the name of the binary cache for a trip file (Departures/nor.csv -> Departures/nor.bin) */
+	public static String cacheName(String filename) {
+		int dot = filename.lastIndexOf('.');
+		if (dot > filename.lastIndexOf('/')) filename = filename.substring(0, dot);
+		return filename + ".bin";
+	}
+
+	/* Writes the trips of the given trip file into the given cache file. Returns the # of trips saved */
+	public static int write(String filename, String cachename) throws IOException {
+		List<String> counties = new ArrayList<String>();
+		Columns columns = new Columns();
+
+		// read all the trips into columns
+		TripParser parser = new TripParser(filename);
+		try {
+			while (parser.next())
+				columns.add(parser, counties);
+		}
+		finally {
+			parser.close();
+		}
+
+		int N = columns.size;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cachename), 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(N);
+			out.writeInt(counties.size());
+			for (String county : counties) {
+				byte[] name = county.getBytes(StandardCharsets.US_ASCII);
+				out.writeShort(name.length);
+				out.write(name);
+			}
+
+			for (int i = 0; i < N; i++) out.writeShort(columns.dCounty[i]);
+			for (int i = 0; i < N; i++) out.writeShort(columns.aCounty[i]);
+			for (int i = 0; i < N; i++) out.writeShort(columns.oX[i]);
+			for (int i = 0; i < N; i++) out.writeShort(columns.oY[i]);
+			for (int i = 0; i < N; i++) out.writeDouble(columns.dTime[i]);
+			for (int i = 0; i < N; i++) out.writeDouble(columns.aTime[i]);
+			for (int i = 0; i < N; i++) out.writeDouble(columns.vehMiles[i]);
+			for (int i = 0; i < N; i++) out.writeDouble(columns.avo[i]);
+			for (int i = 0; i < N; i++) out.writeByte(columns.nodes[i]);
+			for (int i = 0; i < N; i++) out.writeShort(columns.totalRiders[i]);
+			for (int i = 0; i < N * MAX_NODES; i++) out.writeShort(columns.destX[i]);
+			for (int i = 0; i < N * MAX_NODES; i++) out.writeShort(columns.destY[i]);
+			for (int i = 0; i < N * MAX_NODES; i++) out.writeShort(columns.riders[i]);
+		}
+		finally {
+			out.close();
+		}
+
+		return N;
+	}
+
+	/* Memory-maps the given cache file for reading */
+	public static Reader open(String cachename) throws IOException {
+		return new Reader(cachename);
+	}
+
+	/* Returns the given pixel coordinate as a short, if it can be saved exactly as one */
+	private static short pixel(double value) {
+		if (value != Math.rint(value) || value < 0 || value > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Pixel cannot be cached: " + value);
+		return (short) value;
+	}
+
+	/* Returns the given count as a short, if it can be saved exactly as one */
+	private static short count(int value) {
+		if (value < 0 || value > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Count cannot be cached: " + value);
+		return (short) value;
+	}
+
+	/* Growable columns of trip data collected while converting a trip file */
+	private static class Columns {
+		private int size = 0;
+		private short[] dCounty = new short[1024];
+		private short[] aCounty = new short[1024];
+		private short[] oX = new short[1024];
+		private short[] oY = new short[1024];
+		private double[] dTime = new double[1024];
+		private double[] aTime = new double[1024];
+		private double[] vehMiles = new double[1024];
+		private double[] avo = new double[1024];
+		private byte[] nodes = new byte[1024];
+		private short[] totalRiders = new short[1024];
+		private short[] destX = new short[1024 * MAX_NODES];
+		private short[] destY = new short[1024 * MAX_NODES];
+		private short[] riders = new short[1024 * MAX_NODES];
+
+		private void add(TripParser trip, List<String> counties) {
+			// each trip only has MAX_NODES node slots
+			if (trip.nodes() < 0 || trip.nodes() > MAX_NODES)
+				throw new IllegalArgumentException("Trip with " + trip.nodes() + " nodes cannot be cached");
+			if (size == dTime.length) grow();
+
+			dCounty[size] = code(trip.dCounty(), counties);
+			aCounty[size] = code(trip.aCounty(), counties);
+			oX[size] = pixel(trip.oX());
+			oY[size] = pixel(trip.oY());
+			dTime[size] = trip.dTime();
+			aTime[size] = trip.aTime();
+			vehMiles[size] = trip.vehMiles();
+			avo[size] = trip.avo();
+			nodes[size] = (byte) trip.nodes();
+			totalRiders[size] = count(trip.totalRiders());
+
+			for (int i = 0; i < trip.nodes(); i++) {
+				int slot = size * MAX_NODES + i;
+				destX[slot] = pixel(trip.destX(i));
+				destY[slot] = pixel(trip.destY(i));
+				riders[slot] = count(trip.riders(i));
+			}
+
+			size++;
+		}
+
+		private void grow() {
+			int length = dTime.length * 2;
+			dCounty = Arrays.copyOf(dCounty, length);
+			aCounty = Arrays.copyOf(aCounty, length);
+			oX = Arrays.copyOf(oX, length);
+			oY = Arrays.copyOf(oY, length);
+			dTime = Arrays.copyOf(dTime, length);
+			aTime = Arrays.copyOf(aTime, length);
+			vehMiles = Arrays.copyOf(vehMiles, length);
+			avo = Arrays.copyOf(avo, length);
+			nodes = Arrays.copyOf(nodes, length);
+			totalRiders = Arrays.copyOf(totalRiders, length);
+			destX = Arrays.copyOf(destX, length * MAX_NODES);
+			destY = Arrays.copyOf(destY, length * MAX_NODES);
+			riders = Arrays.copyOf(riders, length * MAX_NODES);
+		}
+
+		/* Returns the code of the given county, adding it to the county list if it is new */
+		private static short code(String county, List<String> counties) {
+			int index = counties.indexOf(county);
+			if (index < 0) {
+				index = counties.size();
+				counties.add(county);
+			}
+			return count(index);
+		}
+	}
+
+	/* Reads the trips of a memory-mapped cache file */
+	public static class Reader implements TripReader {
+		private MappedByteBuffer buffer; // mapped cache file
+		private int trips; // # of trips in the cache
+		private String[] counties; // county name of each county code
+		private int row; // current trip
+		private int position; // # of trips read - 1
+		private int[] order; // trips in the order they are read, null for the order of the file
+		private TripTable table = new TripTable(); // trips created from this cache
+
+		/* start of each column in the cache file */
+		private int dCounty, aCounty, oX, oY, dTime, aTime, vehMiles, avo, nodes, totalRiders, destX, destY, riders;
+
+		private Reader(String cachename) throws IOException {
+			FileChannel channel = FileChannel.open(Paths.get(cachename), StandardOpenOption.READ);
+			try {
+				if (channel.size() > Integer.MAX_VALUE) throw new IOException("Trip cache is too large to map: " + cachename);
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+			finally {
+				channel.close(); // the mapping stays valid after the channel is closed
+			}
+
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException("Not a trip cache: " + cachename);
+
+			trips = buffer.getInt();
+			counties = new String[buffer.getInt()];
+			for (int i = 0; i < counties.length; i++) {
+				byte[] name = new byte[buffer.getShort()];
+				buffer.get(name);
+				counties[i] = new String(name, StandardCharsets.US_ASCII);
+			}
+
+			int N = trips;
+			dCounty = buffer.position();
+			aCounty = dCounty + 2*N;
+			oX = aCounty + 2*N;
+			oY = oX + 2*N;
+			dTime = oY + 2*N;
+			aTime = dTime + 8*N;
+			vehMiles = aTime + 8*N;
+			avo = vehMiles + 8*N;
+			nodes = avo + 8*N;
+			totalRiders = nodes + N;
+			destX = totalRiders + 2*N;
+			destY = destX + 2*N*MAX_NODES;
+			riders = destY + 2*N*MAX_NODES;
+
+			if (riders + 2*N*MAX_NODES != buffer.capacity())
+				throw new IOException("Trip cache is the wrong size: " + cachename);
+
+			row = -1;
+			position = -1;
+		}
+
+		/* Returns the total number of trips in the cache */
+		public int size() {
+			return trips;
+		}
+
+		/* Move to the given trip, so that the next call to next() reads it */
+		public void seek(int trip) {
+			position = trip - 1;
+		}
+
+		/* 	Read the trips in order of departure time from now on (trips that depart at the same time stay
+			in file order), starting over from the first one. Only keeps the order of the trips in memory */
+		public void sortByDepartureTime() {
+			sortBy(dTime);
+		}
+
+		/* 	Read the trips in order of arrival time from now on (trips that arrive at the same time stay
+			in file order), starting over from the first one. Only keeps the order of the trips in memory */
+		public void sortByArrivalTime() {
+			sortBy(aTime);
+		}
+
+		/* Sort the trips by the given column of times */
+		private void sortBy(int column) {
+			double[] times = new double[trips];
+			int[] rows = new int[trips];
+			for (int i = 0; i < trips; i++) {
+				times[i] = buffer.getDouble(column + 8*i);
+				rows[i] = i;
+			}
+
+			// bottom-up merge sort of the rows by their time, which keeps rows with the same time in order
+			int[] merged = new int[trips];
+			for (int width = 1; width < trips; width *= 2) {
+				for (int from = 0; from < trips; from += 2*width) {
+					int middle = Math.min(from + width, trips);
+					int to = Math.min(from + 2*width, trips);
+
+					int i = from, j = middle, k = from;
+					while (i < middle && j < to)
+						merged[k++] = (Double.compare(times[rows[j]], times[rows[i]]) < 0) ? rows[j++] : rows[i++];
+					while (i < middle) merged[k++] = rows[i++];
+					while (j < to) merged[k++] = rows[j++];
+				}
+
+				int[] swap = rows;
+				rows = merged;
+				merged = swap;
+			}
+
+			order = rows;
+			position = -1;
+		}
+
+		public boolean next() {
+			if (position + 1 >= trips) return false;
+			position++;
+			row = (order == null) ? position : order[position];
+			return true;
+		}
+
+		/* Create a trip from the current trip, saved in this reader's trip table */
+		public Trip trip() {
+			return table.add(this);
+		}
+
+		public void close() {
+			// nothing to close, the mapping is released once the reader is no longer used
+		}
+
+		public String dCounty() {
+			return counties[buffer.getShort(dCounty + 2*row)];
+		}
+
+		public double oX() {
+			return buffer.getShort(oX + 2*row);
+		}
+
+		public double oY() {
+			return buffer.getShort(oY + 2*row);
+		}
+
+		public double dTime() {
+			return buffer.getDouble(dTime + 8*row);
+		}
+
+		public int nodes() {
+			return buffer.get(nodes + row);
+		}
+
+		public double destX(int node) {
+			return buffer.getShort(destX + 2*(row*MAX_NODES + node));
+		}
+
+		public double destY(int node) {
+			return buffer.getShort(destY + 2*(row*MAX_NODES + node));
+		}
+
+		public int riders(int node) {
+			return buffer.getShort(riders + 2*(row*MAX_NODES + node));
+		}
+
+		public int totalRiders() {
+			return buffer.getShort(totalRiders + 2*row);
+		}
+
+		public double vehMiles() {
+			return buffer.getDouble(vehMiles + 8*row);
+		}
+
+		public double avo() {
+			return buffer.getDouble(avo + 8*row);
+		}
+
+		public String aCounty() {
+			return counties[buffer.getShort(aCounty + 2*row)];
+		}
+
+		public double aTime() {
+			return buffer.getDouble(aTime + 8*row);
+		}
+	}
+}
@@ -0,0 +1,351 @@
+/* Trip file parser
+   Walks the raw bytes of a Departures/Arrivals trip file and pulls the columns the optimizer
+   uses straight into primitives, without creating a String or String[] for every line
+*/
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+public class TripParser implements TripReader {
+	private static final int BUFFER_SIZE = 1 << 20; // bytes read from the file at a time
+	private static final int MAX_NODES = 3; // trip files have columns for at most 3 nodes
+	private static final int COLUMNS = 25; // number of columns needed from every line
+	private static final double[] POWERS = new double[23]; // exact powers of ten used to place the decimal point
+
+	static {
+		POWERS[0] = 1;
+		for (int i = 1; i < POWERS.length; i++)
+			POWERS[i] = POWERS[i-1] * 10;
+	}
+
+	private FileChannel channel; // open trip file
+	private ByteBuffer buffer; // reusable buffer the file is read into
+	private byte[] bytes; // array backing the buffer
+	private int pos; // start of the next unread line in the buffer
+	private int limit; // end of the valid bytes in the buffer
+	private boolean eof; // whether the whole file has been read into the buffer
+	private long base; // offset in the file of the start of the buffer
+	private long end; // lines that start at or after this offset in the file are not read
+
+	private List<String> counties; // county names seen so far, so each name is only created once
+	private TripTable table = new TripTable(); // trips created from this file
+
+	/* columns of the current line */
+	private String dCounty; // origin county (column 0)
+	private double oX; // origin xPixel (column 1)
+	private double oY; // origin yPixel (column 2)
+	private double dTime; // departure time (column 3)
+	private int nodes; // # of nodes on the trip (column 4)
+	private double[] destX; // destination xPixel of each node (columns 6, 10, 14)
+	private double[] destY; // destination yPixel of each node (columns 7, 11, 15)
+	private int[] riders; // # of riders on each node (columns 8, 12, 16)
+	private int totalRiders; // total riders on the trip (column 17)
+	private double vehMiles; // vehicle miles of the trip (column 18)
+	private double avo; // average vehicle occupancy of the trip (column 20)
+	private String aCounty; // arrival county (column 21)
+	private double aTime; // arrival time (column 24)
+
+	/* Open the given trip file and skip past its header line */
+	public TripParser(String filename) throws IOException {
+		this(filename, 0, Long.MAX_VALUE);
+	}
+
+	/* 	Open the given trip file, to only read the lines that start between the given byte offsets
+		(start inclusive, end exclusive). The ranges of a file can be split anywhere: a line that is
+		cut by a split is read by the range it starts in, and the header line is skipped by the first range */
+	public TripParser(String filename, long start, long end) throws IOException {
+		channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		bytes = buffer.array();
+		pos = 0;
+		limit = 0;
+		eof = false;
+		this.end = end;
+
+		counties = new ArrayList<String>();
+		destX = new double[MAX_NODES];
+		destY = new double[MAX_NODES];
+		riders = new int[MAX_NODES];
+
+		// skip the header line, or the end of the line that was cut by the start of the range
+		// (from the byte before the range, so a line starting right at the range is kept)
+		base = Math.max(start - 1, 0);
+		channel.position(base);
+		skipLine();
+	}
+
+	/* 	Returns the byte offsets that split the given trip file into the given number of ranges of about the same
+		size, to be read by separate parsers. Range i runs from offset i to offset i+1 */
+	public static long[] split(String filename, int ranges) throws IOException {
+		long size = Files.size(Paths.get(filename));
+		long[] offsets = new long[ranges + 1];
+
+		for (int i = 0; i <= ranges; i++)
+			offsets[i] = size * i / ranges;
+		offsets[ranges] = Long.MAX_VALUE;
+
+		return offsets;
+	}
+
+	/* Move on to the next line of trip data. Returns false once the end of the file is reached */
+	public boolean next() throws IOException {
+		while (true) {
+			if (base + pos >= this.end) return false; // next line starts in the next range
+
+			int end = endOfLine();
+			if (end < 0) return false;
+
+			int start = pos;
+			pos = Math.min(end + 1, limit);
+
+			// ignore trailing carriage returns and blank lines
+			if (end > start && bytes[end-1] == '\r') end--;
+			if (end == start) continue;
+
+			parseLine(start, end);
+			return true;
+		}
+	}
+
+	/* Create a trip from the current line, saved in this parser's trip table */
+	public Trip trip() {
+		return table.add(this);
+	}
+
+	public void close() {
+		try {channel.close();} catch (Exception e) {}
+	}
+
+	public String dCounty() {
+		return dCounty;
+	}
+
+	public double oX() {
+		return oX;
+	}
+
+	public double oY() {
+		return oY;
+	}
+
+	public double dTime() {
+		return dTime;
+	}
+
+	public int nodes() {
+		return nodes;
+	}
+
+	public double destX(int node) {
+		return destX[node];
+	}
+
+	public double destY(int node) {
+		return destY[node];
+	}
+
+	public int riders(int node) {
+		return riders[node];
+	}
+
+	public int totalRiders() {
+		return totalRiders;
+	}
+
+	public double vehMiles() {
+		return vehMiles;
+	}
+
+	public double avo() {
+		return avo;
+	}
+
+	public String aCounty() {
+		return aCounty;
+	}
+
+	public double aTime() {
+		return aTime;
+	}
+
+	/* Returns the index of the end of the current line, reading more of the file if the line
+		is not yet fully in the buffer. Returns -1 if there are no more lines */
+	private int endOfLine() throws IOException {
+		int from = pos;
+		while (true) {
+			for (int i = from; i < limit; i++)
+				if (bytes[i] == '\n') return i;
+
+			// last line of the file may not end with a newline
+			if (eof) return (pos < limit) ? limit : -1;
+
+			from = limit - pos;
+			fill();
+			from = Math.max(pos, from);
+		}
+	}
+
+	/* Skip the current line without parsing it */
+	private void skipLine() throws IOException {
+		int end = endOfLine();
+		if (end >= 0) pos = Math.min(end + 1, limit);
+	}
+
+	/* Moves the unread bytes to the front of the buffer and reads more of the file after them */
+	private void fill() throws IOException {
+		int remaining = limit - pos;
+
+		// grow the buffer if a single line does not fit in it
+		if (remaining == bytes.length) {
+			ByteBuffer larger = ByteBuffer.allocate(bytes.length * 2);
+			larger.put(bytes, pos, remaining);
+			buffer = larger;
+			bytes = buffer.array();
+		}
+		else {
+			System.arraycopy(bytes, pos, bytes, 0, remaining);
+			buffer.clear();
+			buffer.position(remaining);
+		}
+		base += pos;
+		pos = 0;
+
+		int read = channel.read(buffer);
+		if (read < 0) eof = true;
+		limit = buffer.position();
+	}
+
+	/* Save the needed columns of the line between start and end */
+	private void parseLine(int start, int end) {
+		int column = 0;
+		int from = start;
+
+		for (int i = start; i <= end; i++) {
+			if (i < end && bytes[i] != ',') continue;
+
+			switch (column) {
+				case 0: dCounty = county(from, i); break;
+				case 1: oX = parseDouble(from, i); break;
+				case 2: oY = parseDouble(from, i); break;
+				case 3: dTime = parseDouble(from, i); break;
+				case 4: nodes = parseInt(from, i); break;
+				case 17: totalRiders = parseInt(from, i); break;
+				case 18: vehMiles = parseDouble(from, i); break;
+				case 20: avo = parseDouble(from, i); break;
+				case 21: aCounty = county(from, i); break;
+				case 24: aTime = parseDouble(from, i); break;
+				default:
+					// node columns are only read for the nodes that the trip actually has
+					if (column >= 6 && column <= 16) {
+						int node = (column - 6) / 4;
+						if (node < nodes) {
+							switch ((column - 6) % 4) {
+								case 0: destX[node] = parseDouble(from, i); break;
+								case 1: destY[node] = parseDouble(from, i); break;
+								case 2: riders[node] = parseInt(from, i); break;
+							}
+						}
+					}
+			}
+
+			column++;
+			from = i + 1;
+		}
+
+		if (column < COLUMNS) throw new IllegalArgumentException("Trip line only has " + column + " columns");
+		if (nodes > MAX_NODES) throw new IllegalArgumentException("Trip line has " + nodes + " nodes");
+	}
+
+	/* Returns the county name (the part before any "-") of the field between start and end */
+	private String county(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (bytes[i] == '-') {
+				end = i;
+				break;
+			}
+		}
+
+		// reuse the name if this county has been seen before
+		int length = end - start;
+		for (int c = 0; c < counties.size(); c++) {
+			String county = counties.get(c);
+			if (county.length() != length) continue;
+
+			boolean same = true;
+			for (int i = 0; i < length && same; i++)
+				same = (county.charAt(i) == bytes[start+i]);
+			if (same) return county;
+		}
+
+		String county = new String(bytes, start, length, StandardCharsets.US_ASCII);
+		counties.add(county);
+		return county;
+	}
+
+	/* Parse the integer in the field between start and end */
+	private int parseInt(int start, int end) {
+		while (start < end && bytes[start] == ' ') start++;
+		if (start == end) throw new NumberFormatException("Empty integer field");
+
+		boolean negative = (bytes[start] == '-');
+		if (negative || bytes[start] == '+') start++;
+
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || i - start > 9)
+				throw new NumberFormatException("Bad integer field: " + text(start, end));
+			value = value*10 + digit;
+		}
+
+		if (negative) value = -value;
+		if (value != (int) value) throw new NumberFormatException("Integer out of range: " + text(start, end));
+		return (int) value;
+	}
+
+	/* Parse the decimal number in the field between start and end.
+		The digits are collected into an exact long and divided by an exact power of ten,
+		which gives the same correctly rounded double as Double.parseDouble. Anything outside of
+		that case (exponents, very long numbers) falls back on Double.parseDouble */
+	private double parseDouble(int start, int end) {
+		int from = start;
+		while (from < end && bytes[from] == ' ') from++;
+		if (from == end) throw new NumberFormatException("Empty decimal field");
+
+		boolean negative = (bytes[from] == '-');
+		if (negative || bytes[from] == '+') from++;
+
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1; // -1 until the decimal point has been seen
+
+		for (int i = from; i < end; i++) {
+			byte b = bytes[i];
+			if (b == '.' && decimals < 0) {
+				decimals = 0;
+				continue;
+			}
+
+			int digit = b - '0';
+			if (digit < 0 || digit > 9 || digits >= 15)
+				return Double.parseDouble(text(start, end).trim());
+
+			mantissa = mantissa*10 + digit;
+			digits++;
+			if (decimals >= 0) decimals++;
+		}
+
+		if (digits == 0) throw new NumberFormatException("Bad decimal field: " + text(start, end));
+
+		double value = (decimals > 0) ? mantissa / POWERS[decimals] : mantissa;
+		return negative ? -value : value;
+	}
+
+	private String text(int start, int end) {
+		return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+	}
+}
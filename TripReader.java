@@ -0,0 +1,43 @@
+/* Trip reader
+   Steps through the trips of a trip file one at a time, whether the trips are read from the
+   text file itself or from its binary trip cache
+*/
+
+import java.io.*;
+
+public interface TripReader {
+
+	/* Move on to the next trip. Returns false once there are no more trips */
+	boolean next() throws IOException;
+
+	/* Create a trip from the current trip (see TripTable) */
+	Trip trip();
+
+	void close();
+
+	String dCounty(); // origin county
+	double oX(); // origin xPixel
+	double oY(); // origin yPixel
+	double dTime(); // departure time
+	int nodes(); // # of nodes on the trip
+	double destX(int node); // destination xPixel of the given node
+	double destY(int node); // destination yPixel of the given node
+	int riders(int node); // # of riders on the given node
+	int totalRiders(); // total riders on the trip
+	double vehMiles(); // vehicle miles of the trip
+	double avo(); // average vehicle occupancy of the trip
+	String aCounty(); // arrival county
+	double aTime(); // arrival time
+
+	/* 	Opens the given trip file. If the file has an up to date binary cache
+		(see TripCache), the trips are read from the cache instead of the text file */
+	static TripReader open(String filename) throws IOException {
+		File cache = new File(TripCache.cacheName(filename));
+		File file = new File(filename);
+
+		if (cache.exists() && (!file.exists() || cache.lastModified() >= file.lastModified()))
+			return TripCache.open(cache.getPath());
+
+		return new TripParser(filename);
+	}
+}
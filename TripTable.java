@@ -0,0 +1,227 @@
+/* Trip table
+   Saves trips as rows of parallel primitive arrays instead of as objects: one array per column
+   (counties as short codes, times, miles, ...), and the nodes of every trip one after another in
+   shared pixel and rider arrays, with each row keeping the offset of its first node.
+   Trip objects are views of a row (see Trip). Rows are never changed once they are added: when a trip
+   is changed, the changed trip is added as a new row and the view is moved to it.
+   NOTE: the old row is left behind, and rows are only freed along with their whole table, once no trip
+   views any of its rows. A trip is only changed when its nodes are combined with another trip's, which can
+   happen at most twice before it has 3 nodes, so a table grows to at most 3 rows per trip that was read.
+   Each trip reader fills in its own table, so tables don't need to be shared between threads
+*/
+
+import java.util.*;
+import java.io.*;
+
+public class TripTable {
+	private static final int INITIAL_ROWS = 1024; // rows a table has room for before growing
+
+	private List<String> counties; // county name of each county code
+
+	/* columns */
+	private int size; // # of rows
+	private short[] dCounty; // origin county code
+	private short[] aCounty; // arrival county code
+	private int[] oPixel; // origin pixel (packed, see Pixel)
+	private double[] dTime; // departure time
+	private double[] aTime; // arrival time
+	private double[] vehMiles; // total miles of the trip
+	private double[] delay; // # of seconds original departure is delayed
+	private int[] nodes; // total # of nodes in the trip
+	private int[] nodeStart; // position of the row's first node in the node arrays
+	private short[] nodeCount; // # of nodes in the row's list of nodes
+
+	/* nodes of every row */
+	private int length; // # of nodes used
+	private int[] pixel; // destination pixel of each node (packed, see Pixel)
+	private short[] riders; // # of riders on each node
+
+	public TripTable() {
+		this(INITIAL_ROWS);
+	}
+
+	/* Create a table with room for the given # of rows before it grows */
+	public TripTable(int rows) {
+		rows = Math.max(rows, 1);
+		counties = new ArrayList<String>();
+
+		dCounty = new short[rows];
+		aCounty = new short[rows];
+		oPixel = new int[rows];
+		dTime = new double[rows];
+		aTime = new double[rows];
+		vehMiles = new double[rows];
+		delay = new double[rows];
+		nodes = new int[rows];
+		nodeStart = new int[rows];
+		nodeCount = new short[rows];
+
+		pixel = new int[3 * rows];
+		riders = new short[3 * rows];
+	}
+
+	/* Adds the current trip of a trip file reader, and returns a view of it */
+	public Trip add(TripReader line) {
+		int row = newRow();
+		for (int i = 0; i < line.nodes(); i++)
+			addNode(Pixel.pack(line.destX(i), line.destY(i)), line.riders(i));
+
+		set(row, line.dCounty(), line.aCounty(), Pixel.pack(line.oX(), line.oY()), line.dTime(), line.aTime(),
+			line.vehMiles(), 0, line.nodes());
+		return new Trip(this, row);
+	}
+
+	/* Adds a trip from a line of trip data in the trip file, and returns a view of it */
+	public Trip add(String line) {
+		String [] info = line.split(","); // split the line of data
+
+		int row = newRow();
+		int N = Integer.parseInt(info[4]);
+		for (int i = 0, x = 0; i < N; i++, x+=4)
+			addNode(Pixel.pack(Double.parseDouble(info[6+x]), Double.parseDouble(info[7+x])), Integer.parseInt(info[8+x]));
+
+		set(row, info[0].split("-")[0], info[21].split("-")[0], Pixel.pack(Double.parseDouble(info[1]), Double.parseDouble(info[2])),
+			Double.parseDouble(info[3]), Double.parseDouble(info[24]), Double.parseDouble(info[18]), 0, N);
+		return new Trip(this, row);
+	}
+
+	/* Adds a trip saved with Trip.write(), and returns a view of it */
+	public Trip read(DataInputStream in) throws IOException {
+		int row = newRow();
+		int N = in.readInt();
+		for (int i = 0; i < N; i++) {
+			int pixel = in.readInt();
+			addNode(pixel, in.readInt());
+		}
+
+		int nodes = in.readInt();
+		String dCounty = in.readUTF();
+		String aCounty = in.readUTF();
+		int oPixel = in.readInt();
+		double dTime = in.readDouble();
+		double aTime = in.readDouble();
+		double vehMiles = in.readDouble();
+		double delay = in.readDouble();
+
+		set(row, dCounty, aCounty, oPixel, dTime, aTime, vehMiles, delay, nodes);
+		return new Trip(this, row);
+	}
+
+	/* Returns the # of rows in the table */
+	public int size() {
+		return size;
+	}
+
+	/* 	Starts a new row at the end of the table, and returns it. Nodes added with addNode() go to this row,
+		until the next row is started */
+	int newRow() {
+		if (size == nodes.length) {
+			int rows = 2 * size;
+			dCounty = Arrays.copyOf(dCounty, rows);
+			aCounty = Arrays.copyOf(aCounty, rows);
+			oPixel = Arrays.copyOf(oPixel, rows);
+			dTime = Arrays.copyOf(dTime, rows);
+			aTime = Arrays.copyOf(aTime, rows);
+			vehMiles = Arrays.copyOf(vehMiles, rows);
+			delay = Arrays.copyOf(delay, rows);
+			nodes = Arrays.copyOf(nodes, rows);
+			nodeStart = Arrays.copyOf(nodeStart, rows);
+			nodeCount = Arrays.copyOf(nodeCount, rows);
+		}
+
+		nodeStart[size] = length;
+		nodeCount[size] = 0;
+		return size++;
+	}
+
+	/* Adds a node to the end of the newest row */
+	void addNode(int pixel, int riders) {
+		if (length == this.pixel.length) {
+			this.pixel = Arrays.copyOf(this.pixel, 2 * length);
+			this.riders = Arrays.copyOf(this.riders, 2 * length);
+		}
+
+		this.pixel[length] = pixel;
+		this.riders[length] = (short) riders;
+		length++;
+		nodeCount[size - 1]++;
+	}
+
+	/* Adds the nodes of a row of the given table to the end of the newest row */
+	void addNodes(TripTable table, int row) {
+		for (int i = 0; i < table.nodeCount[row]; i++)
+			addNode(table.pixel(row, i), table.riders(row, i));
+	}
+
+	/* Sets the columns of a row */
+	void set(int row, String dCounty, String aCounty, int oPixel, double dTime, double aTime, double vehMiles, double delay, int nodes) {
+		this.dCounty[row] = code(dCounty);
+		this.aCounty[row] = code(aCounty);
+		this.oPixel[row] = oPixel;
+		this.dTime[row] = dTime;
+		this.aTime[row] = aTime;
+		this.vehMiles[row] = vehMiles;
+		this.delay[row] = delay;
+		this.nodes[row] = nodes;
+	}
+
+	String dCounty(int row) {
+		return counties.get(dCounty[row]);
+	}
+
+	String aCounty(int row) {
+		return counties.get(aCounty[row]);
+	}
+
+	int oPixel(int row) {
+		return oPixel[row];
+	}
+
+	double dTime(int row) {
+		return dTime[row];
+	}
+
+	double aTime(int row) {
+		return aTime[row];
+	}
+
+	double vehMiles(int row) {
+		return vehMiles[row];
+	}
+
+	double delay(int row) {
+		return delay[row];
+	}
+
+	int nodes(int row) {
+		return nodes[row];
+	}
+
+	/* Returns the # of nodes in the row's list of nodes */
+	int nodeCount(int row) {
+		return nodeCount[row];
+	}
+
+	/* Returns the destination pixel of the given node of a row */
+	int pixel(int row, int node) {
+		return pixel[nodeStart[row] + node];
+	}
+
+	/* Returns the # of riders on the given node of a row */
+	int riders(int row, int node) {
+		return riders[nodeStart[row] + node];
+	}
+
+	/* Returns the code of the given county, adding it to the county list if it is new */
+	private short code(String county) {
+		for (int c = 0; c < counties.size(); c++)
+			if (counties.get(c) == county) return (short) c;
+
+		int c = counties.indexOf(county);
+		if (c < 0) {
+			c = counties.size();
+			counties.add(county);
+		}
+		return (short) c;
+	}
+}
@@ -0,0 +1,33 @@
+/* Trip totals
+   Counts the total number of trips and riders in the scanned trip files
+*/
+
+public class TripTotals implements TripAggregator {
+	private String label; // what the trips are (e.g. "departure"), used when printing
+	private int trips; // total # of trips
+	private int riders; // total # of riders
+
+	public TripTotals(String label) {
+		this.label = label;
+		trips = 0;
+		riders = 0;
+	}
+
+	public void add(TripReader trip) {
+		trips++;
+		riders += trip.totalRiders();
+	}
+
+	public int trips() {
+		return trips;
+	}
+
+	public int riders() {
+		return riders;
+	}
+
+	public void print() {
+		System.out.println("Total " + label + " trips: " + trips);
+		System.out.println("Total " + label + " passengers: " + riders);
+	}
+}